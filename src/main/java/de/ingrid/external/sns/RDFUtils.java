@@ -196,28 +196,35 @@ public class RDFUtils {
         StmtIterator stmts = res.listProperties(prop);
         while (stmts.hasNext()) {
         	Statement bb = stmts.next();
-			String preparedCoordinates = "";
-			String value = bb.getObject().toString();
-			// bounding boxes have the format "x1,y1 x2,y2"
-			String[] coordinates = value.split(" ");
-			if (coordinates.length == 1) {
-				preparedCoordinates = coordinates[0];
-			} else if (coordinates.length == 2) {
-				preparedCoordinates = coordinates[0] + "," + coordinates[1];
-			}
-			String[] coordinatesSplitted = preparedCoordinates.split(",");
-
-			// transform to floats
-			bbFloat = new float[coordinatesSplitted.length];
-			for (int i = 0; i < coordinatesSplitted.length; i++) {
-				bbFloat[i] = Float.valueOf(coordinatesSplitted[i]);
-			}
+			bbFloat = parseBoundingBox(bb.getObject().toString());
 			// prefer real bounding box instead of coordinate
 			if (bbFloat.length == 4) break;
 		}
         return bbFloat;
 	}
 
+	/**
+	 * Parse a bounding box of the format "x1,y1 x2,y2" or a coordinate "x1,y1".
+	 */
+	public static float[] parseBoundingBox(String value) {
+		String preparedCoordinates = "";
+		// bounding boxes have the format "x1,y1 x2,y2"
+		String[] coordinates = value.split(" ");
+		if (coordinates.length == 1) {
+			preparedCoordinates = coordinates[0];
+		} else if (coordinates.length == 2) {
+			preparedCoordinates = coordinates[0] + "," + coordinates[1];
+		}
+		String[] coordinatesSplitted = preparedCoordinates.split(",");
+
+		// transform to floats
+		float[] bbFloat = new float[coordinatesSplitted.length];
+		for (int i = 0; i < coordinatesSplitted.length; i++) {
+			bbFloat[i] = Float.valueOf(coordinatesSplitted[i]);
+		}
+		return bbFloat;
+	}
+
 	public static String getMemberOf(Resource topic) {
 		RDFNode node = getObject(topic, "schema", "memberOf");
 		if (node == null) return null;
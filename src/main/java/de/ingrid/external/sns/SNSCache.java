@@ -0,0 +1,225 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ * 
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread safe cache with a maximum number of entries (least recently used entries are evicted first)
+ * and a time to live for every entry. Counts hits, misses and evictions for monitoring.<br/>
+ * Expired entries are removed when they are requested or by {@link #purge()}.
+ */
+public class SNSCache<K, V> {
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+    private Consumer<? super V> removalListener;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * @param maxEntries maximum number of entries, pass 0 to disable the cache
+     * @param timeToLive time to live of an entry in milliseconds
+     */
+    public SNSCache(int maxEntries, long timeToLive) {
+        this(maxEntries, timeToLive, System::currentTimeMillis);
+    }
+
+    SNSCache(int maxEntries, long timeToLive, LongSupplier clock) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Max entries can not be lower than 0");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Time to live must be greater than 0");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > SNSCache.this.maxEntries) {
+                    evictions++;
+                    removed(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value or null if there is none or it is expired
+     */
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.expires <= clock.getAsLong()) {
+            entries.remove(key);
+            expirations++;
+            removed(entry);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (maxEntries == 0 || value == null) {
+            return;
+        }
+        CacheEntry<V> previous = entries.put(key, new CacheEntry<>(value, clock.getAsLong() + timeToLive));
+        if (previous != null && previous.value != value) {
+            removed(previous);
+        }
+    }
+
+    public synchronized void remove(K key) {
+        removed(entries.remove(key));
+    }
+
+    public synchronized void clear() {
+        for (CacheEntry<V> entry : entries.values()) {
+            removed(entry);
+        }
+        entries.clear();
+    }
+
+    /** Remove all expired entries. */
+    public synchronized void purge() {
+        long now = clock.getAsLong();
+        Iterator<CacheEntry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            CacheEntry<V> entry = it.next();
+            if (entry.expires <= now) {
+                it.remove();
+                expirations++;
+                removed(entry);
+            }
+        }
+    }
+
+    /**
+     * Set a listener called with every value leaving the cache (removed, replaced, evicted or
+     * expired), e.g. to release resources of the value. It is called while holding the lock of the
+     * cache and must not access the cache.
+     */
+    public synchronized void setRemovalListener(Consumer<? super V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    private void removed(CacheEntry<V> entry) {
+        if (entry != null && removalListener != null) {
+            removalListener.accept(entry.value);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(entries.size(), hits, misses, evictions, expirations);
+    }
+
+    private static final class CacheEntry<V> {
+        private final V value;
+        private final long expires;
+
+        private CacheEntry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /** Snapshot of the cache counters. */
+    public static final class Statistics {
+        private final int size;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+
+        Statistics(int size, long hits, long misses, long evictions, long expirations) {
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /** @return number of entries removed because the cache was full */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /** @return number of entries removed because their time to live passed */
+        public long getExpirations() {
+            return expirations;
+        }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size + " hits=" + hits + " misses=" + misses + " evictions=" + evictions + " expirations=" + expirations;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+/**
+ * Circuit breaker of one SNS service (thesaurus, gazetteer or chronicle).
+ * <p>
+ * After "failureThreshold" failed requests in a row the breaker opens and requests fail immediately
+ * instead of waiting for the timeout. After "openTime" one trial request is let through: if it
+ * succeeds the breaker closes, otherwise it stays open for another "openTime".
+ */
+public class SNSCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openTime;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    /**
+     * @param failureThreshold number of failed requests in a row which open the breaker, 0 never opens it
+     * @param openTime time in milliseconds until a trial request is let through
+     */
+    public SNSCircuitBreaker(int failureThreshold, long openTime) {
+        if (failureThreshold < 0) {
+            throw new IllegalArgumentException( "Failure threshold can not be lower than 0" );
+        }
+        if (openTime < 0) {
+            throw new IllegalArgumentException( "Open time can not be lower than 0" );
+        }
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+    }
+
+    /**
+     * Check whether a request may be sent. When the open time passed, only the first caller gets
+     * true and sends the trial request.
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openTime) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the breaker was open and closes now
+     */
+    public synchronized boolean recordSuccess() {
+        boolean closed = state != State.CLOSED;
+        state = State.CLOSED;
+        failures = 0;
+        return closed;
+    }
+
+    /**
+     * @return true if the breaker was closed and opens now, not for a failed trial request
+     */
+    public synchronized boolean recordFailure() {
+        failures++;
+        boolean thresholdReached = failureThreshold > 0 && failures >= failureThreshold;
+        boolean opened = state == State.CLOSED && thresholdReached;
+        if (state == State.HALF_OPEN || thresholdReached) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+        return opened;
+    }
+
+    /**
+     * A request was aborted by the caller (interrupted) before the service answered. This tells
+     * nothing about the service, but a trial request must not keep the breaker half open, so the
+     * next call of {@link #allowRequest()} gets a new trial.
+     */
+    public synchronized void recordAbort() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis() - openTime;
+        }
+    }
+
+    /**
+     * @return true if requests are failing, also while a trial request is running
+     */
+    public synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -31,21 +31,46 @@ import de.ingrid.external.FullClassifyService.FilterType;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.RiotException;
 import org.apache.jena.shared.DoesNotExistException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.FileNotFoundException;
-import java.io.OutputStreamWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.rmi.RemoteException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Adapter which provides the access to the sns webservice.
  * <p>
+ * The client is thread safe. All requests share one pooled keep-alive HTTP client and the number of
+ * parallel requests to a single host is limited (see {@link #setMaxConnectionsPerHost(int)}).
+ * <p>
  * created on 21.07.2005
  * <p>
  *
@@ -61,11 +86,57 @@ public class SNSClient {
 
     public static final int PAGE_START = 1;
 
-    private String fLanguage;
+    public static final int DEFAULT_TIMEOUT = 30000;
+
+    // delay before the first retry of a request in milliseconds, doubled for every further retry
+    private static final long RETRY_DELAY = 100;
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 16;
+
+    public static final int DEFAULT_RETRIES = 1;
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    public static final int DEFAULT_OPEN_TIME = 30000;
+
+    // closes response bodies which are not read within the latency budget
+    private static final ScheduledThreadPoolExecutor BODY_DEADLINES = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "sns-body-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        BODY_DEADLINES.setRemoveOnCancelPolicy(true);
+    }
+
+    private final String fLanguage;
+
+    private final URL fUrlThesaurus;
+    private final URL fUrlGazetteer;
+    private final URL fUrlChronicle;
+
+    private volatile int fTimeout = DEFAULT_TIMEOUT;
+    private volatile int fMaxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    // GET requests follow redirects, other requests (autoClassify) not
+    private volatile HttpClient fHttpClient = createHttpClient(DEFAULT_TIMEOUT, HttpClient.Redirect.NORMAL);
+    private volatile HttpClient fHttpClientNoRedirects = createHttpClient(DEFAULT_TIMEOUT, HttpClient.Redirect.NEVER);
+
+    private volatile SNSMetrics fMetrics = SNSMetrics.NOOP;
+
+    private volatile int fRetries = DEFAULT_RETRIES;
+    private volatile int fHedgeDelay = 0;
+    private volatile int fLatencyBudget = 0;
+
+    private volatile int fFailureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile int fOpenTime = DEFAULT_OPEN_TIME;
+
+    // limits the number of requests in flight per host, key is "host:port"
+    private final Map<String, HostPermits> fHostPermits = new ConcurrentHashMap<>();
 
-    private URL fUrlThesaurus;
-    private URL fUrlGazetteer;
-    private URL fUrlChronicle;
+    // circuit breakers by service url
+    private final Map<String, SNSCircuitBreaker> fCircuitBreakers = new ConcurrentHashMap<>();
 
 
     /**
@@ -109,13 +180,13 @@ public class SNSClient {
      * @return The response object.
      * @throws Exception
      */
-    public synchronized Resource findTopics(String queryTerm, FilterType type, String searchType,
-                                            String fieldsType, long offset, long pageSize, String lang, boolean includeUse) throws Exception {
+    public Resource findTopics(String queryTerm, FilterType type, String searchType,
+                               String fieldsType, long offset, long pageSize, String lang, boolean includeUse) throws Exception {
         return findTopics(null, queryTerm, type, searchType, fieldsType, offset, pageSize, lang, includeUse);
     }
 
-    public synchronized Resource findTopics(String url, String queryTerm, FilterType type, String searchType,
-                                            String fieldsType, long offset, long pageSize, String lang, boolean includeUse) throws Exception {
+    public Resource findTopics(String url, String queryTerm, FilterType type, String searchType,
+                               String fieldsType, long offset, long pageSize, String lang, boolean includeUse) throws Exception {
 
         if (queryTerm == null) {
             throw new IllegalArgumentException("QueryTerm can not be null");
@@ -127,8 +198,7 @@ public class SNSClient {
             throw new IllegalArgumentException("Offset can not be lower than 0");
         }
 
-        // create an empty model
-        Model model = ModelFactory.createDefaultModel();
+        Model model;
         String query = null;
         // encode parameter
         queryTerm = URLEncoder.encode(queryTerm, "utf8");
@@ -143,41 +213,36 @@ public class SNSClient {
 
         try {
             // read the RDF/XML file
-            model.read(query);
+            model = readModel(SNSMetrics.FIND_TOPICS, query);
         } catch (DoesNotExistException e) {
             log.error("The search-function does not exist: {}", query, e);
             return null;
+        } catch (ServiceUnavailableException e) {
+            log.debug(e.getMessage());
+            return null;
         } catch (Exception e) {
             log.error("The URI seems to have a problem: {}", query, e);
             return null;
         }
 
         // write it to standard out
-        if (log.isDebugEnabled()) {
+        if (log.isTraceEnabled()) {
             model.write(System.out);
         }
 
         return model.getResource(query);
     }
 
-    public synchronized Resource getTerm(String termId, String lang, FilterType type) {
+    public Resource getTerm(String termId, String lang, FilterType type) {
         if (type == null) {
             throw new IllegalArgumentException("FilterType can not be null");
         }
         return getTermByUri(getUrlByFilter(type), termId, lang);
     }
 
-    public synchronized Resource getTermByUri(String uri, String termId, String lang) {
-
-        if (termId == null) {
-            throw new IllegalArgumentException("The ID must not be null!");
-        }
-        // create an empty model
-        Model model = ModelFactory.createDefaultModel();
-
-        int pos = termId.lastIndexOf('/') + 1;
-        String type = determineType(termId);
-        String query = HtmlUtils.prepareUrl(uri) + lang + type + termId.substring(pos).trim() + ".rdf";
+    public Resource getTermByUri(String uri, String termId, String lang) {
+        String query = getTermQuery(uri, termId, lang);
+        Model model;
 
         if (log.isDebugEnabled()) {
             log.debug("Fetching term from: {}", query);
@@ -185,10 +250,13 @@ public class SNSClient {
 
         try {
             // read the RDF/XML file
-            model.read(query);
+            model = readModel(SNSMetrics.GET_TERM, query);
         } catch (DoesNotExistException e) {
             log.error("The term does not exist: {}", query, e);
             return null;
+        } catch (ServiceUnavailableException e) {
+            log.debug(e.getMessage());
+            return null;
         } catch (Exception e) {
             log.error("The URI seems to have a problem: {}", query, e);
             return null;
@@ -196,13 +264,53 @@ public class SNSClient {
 
         // write it to standard out
         // throws error!
-        /*if (log.isDebugEnabled()) {
+        /*if (log.isTraceEnabled()) {
             model.write(System.out);
         }*/
 
         return model.getResource(termId);
     }
 
+    /**
+     * Fetch a term like {@link #getTerm(String, String, FilterType)}, but stream the response into
+     * compact concepts instead of building a model. Only the properties needed for mapping are kept.
+     *
+     * @return all concepts of the response (the term and the concepts it refers to) by their uri,
+     *         null if the term could not be fetched
+     */
+    public Map<String, SNSConcept> getTermConcepts(String termId, String lang, FilterType type) {
+        if (type == null) {
+            throw new IllegalArgumentException("FilterType can not be null");
+        }
+        String query = getTermQuery(getUrlByFilter(type), termId, lang);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Fetching term concepts from: {}", query);
+        }
+
+        try {
+            return readConcepts(SNSMetrics.GET_TERM, query);
+        } catch (DoesNotExistException e) {
+            log.error("The term does not exist: {}", query, e);
+            return null;
+        } catch (ServiceUnavailableException e) {
+            log.debug(e.getMessage());
+            return null;
+        } catch (Exception e) {
+            log.error("The URI seems to have a problem: {}", query, e);
+            return null;
+        }
+    }
+
+    private String getTermQuery(String uri, String termId, String lang) {
+        if (termId == null) {
+            throw new IllegalArgumentException("The ID must not be null!");
+        }
+        int pos = termId.lastIndexOf('/') + 1;
+        String type = determineType(termId);
+        return HtmlUtils.prepareUrl(uri) + lang + type + termId.substring(pos).trim() + ".rdf";
+    }
+
     private String determineType(String termId) {
         //if (termId.indexOf("/collections/") != -1)
         //	return "/collections/";
@@ -221,8 +329,8 @@ public class SNSClient {
      * @return A topic map fragment.
      * @throws Exception
      */
-    public synchronized Resource autoClassify(String document, int analyzeMaxWords, FilterType type,
-                                              boolean ignoreCase, String lang) throws Exception {
+    public Resource autoClassify(String document, int analyzeMaxWords, FilterType type,
+                                 boolean ignoreCase, String lang) throws Exception {
         if (document == null) {
             throw new IllegalArgumentException("document can not be null");
         }
@@ -233,35 +341,31 @@ public class SNSClient {
             throw new IllegalArgumentException("AnalyzeMaxWords can not be lower than 0");
         }
 
-        // open a connection to the target url
         String query = getUrlByFilter(type) + lang + "/autoclassify/plain.rdf";
-        URL url = new URL(query);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setDoOutput(true);
-        connection.setInstanceFollowRedirects(false);
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-        connection.setRequestProperty("charset", "utf-8");
-        connection.connect();
 
         // send the document data to analyze
-        OutputStreamWriter writer = new OutputStreamWriter(connection.getOutputStream());
         String content = "content=" + document;
         // replace all '%' as the SNS returns 400 Bad Request otherwise REDMINE-2321
         content = content.replaceAll("%", " ");
-        writer.write(content);
-        writer.flush();
+        HttpRequest request = newRequest(query)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("charset", "utf-8")
+                .POST(HttpRequest.BodyPublishers.ofString(content, StandardCharsets.UTF_8))
+                .build();
 
         // read the response into the model
-        Model model = ModelFactory.createDefaultModel();
+        Model model;
         try {
-            model.read(connection.getInputStream(), null);
-        } catch (FileNotFoundException e) {
+            model = readModel(SNSMetrics.AUTO_CLASSIFY, request, null);
+        } catch (DoesNotExistException e) {
             log.warn("The autoClassify-Service for type: {} seems not to be available: {}", type, e.getMessage());
             return null;
+        } catch (ServiceUnavailableException e) {
+            log.debug(e.getMessage());
+            return null;
         }
 
-        if (log.isDebugEnabled()) {
+        if (log.isTraceEnabled()) {
             model.write(System.out);
         }
 
@@ -277,7 +381,7 @@ public class SNSClient {
      * @return A topic map fragment.
      * @throws Exception
      */
-    public synchronized Resource autoClassifyToUrl(String url, FilterType type, String lang) throws Exception {
+    public Resource autoClassifyToUrl(String url, FilterType type, String lang) throws Exception {
         if (url == null) {
             throw new IllegalArgumentException("Url can not be null");
         }
@@ -285,7 +389,7 @@ public class SNSClient {
             throw new IllegalArgumentException("FilterType can not be null");
         }
 
-        Model model = ModelFactory.createDefaultModel();
+        Model model;
 
         String params = "/autoclassify/extract.rdf?uri=" + url;
         String query = getUrlByFilter(type) + lang + params;
@@ -296,24 +400,30 @@ public class SNSClient {
 
         try {
             // read the RDF/XML file
-            model.read(query);
+            model = readModel(SNSMetrics.AUTO_CLASSIFY, query);
         } catch (DoesNotExistException e) {
             log.error("The autoclassify-function does not exist: {}", query, e);
             return null;
+        } catch (ServiceUnavailableException e) {
+            log.debug(e.getMessage());
+            return null;
         } catch (Exception e) {
             log.error("The URI seems to have a problem: {}", query, e);
             return null;
         }
 
         // write it to standard out
-        if (log.isDebugEnabled()) {
+        if (log.isTraceEnabled()) {
             model.write(System.out);
         }
 
         return model.getResource(query);
     }
 
-    private String getUrlByFilter(FilterType type) {
+    /**
+     * Get the service url used for requests of the given type.
+     */
+    String getUrlByFilter(FilterType type) {
         String uri = null;
         if (type == FilterType.ONLY_TERMS)
             uri = this.fUrlThesaurus.toString();
@@ -338,8 +448,8 @@ public class SNSClient {
      * @return A topic map fragment.
      * @throws UnsupportedEncodingException
      */
-    public synchronized Resource findEvents(String queryParam, String searchType, String fieldsType,
-                                            long offset, String at, String lang, int length)
+    public Resource findEvents(String queryParam, String searchType, String fieldsType,
+                               long offset, String at, String lang, int length)
             throws RemoteException, UnsupportedEncodingException {
 
         return findEvents(queryParam, searchType, fieldsType, offset, at, at, lang, length);
@@ -359,11 +469,11 @@ public class SNSClient {
      * @throws RemoteException
      * @throws UnsupportedEncodingException
      */
-    public synchronized Resource findEvents(String queryParam, String searchType, String inCollection,
-                                            long offset, String from, String to, String lang, int length)
+    public Resource findEvents(String queryParam, String searchType, String inCollection,
+                               long offset, String from, String to, String lang, int length)
             throws RemoteException, UnsupportedEncodingException {
 
-        Model model = ModelFactory.createDefaultModel();
+        Model model;
 
         if (from == null) from = "";
         if (to == null) to = "";
@@ -382,17 +492,20 @@ public class SNSClient {
 
         try {
             // read the RDF/XML file
-            model.read(query);
+            model = readModel(SNSMetrics.FIND_EVENTS, query);
         } catch (DoesNotExistException e) {
             log.error("The search-function does not exist: {}", query, e);
             return null;
+        } catch (ServiceUnavailableException e) {
+            log.debug(e.getMessage());
+            return null;
         } catch (Exception e) {
             log.error("The URI seems to have a problem: {}", query, e);
             return null;
         }
 
         // write it to standard out
-        if (log.isDebugEnabled()) {
+        if (log.isTraceEnabled()) {
             model.write(System.out);
         }
 
@@ -406,9 +519,8 @@ public class SNSClient {
      * @return A topic map fragment.
      * @throws RemoteException
      */
-    public synchronized Resource anniversary(String date, String lang) throws RemoteException {
-        // create an empty model
-        Model model = ModelFactory.createDefaultModel();
+    public Resource anniversary(String date, String lang) throws RemoteException {
+        Model model;
 
         String query = getUrlByFilter(FilterType.ONLY_EVENTS) + lang + "/anniversary.rdf?date=" + date;
 
@@ -418,10 +530,13 @@ public class SNSClient {
 
         try {
             // read the RDF/XML file
-            model.read(query);
+            model = readModel(SNSMetrics.ANNIVERSARY, query);
         } catch (DoesNotExistException e) {
             log.error("The anniversary-function does not exist: {}", query, e);
             return null;
+        } catch (ServiceUnavailableException e) {
+            log.debug(e.getMessage());
+            return null;
         } catch (Exception e) {
             log.error("The URI seems to have a problem: {}", query, e);
             return null;
@@ -429,7 +544,7 @@ public class SNSClient {
 
         // write it to standard out
         // throws error!
-        /*if (log.isDebugEnabled()) {
+        /*if (log.isTraceEnabled()) {
             model.write(System.out);
         }*/
 
@@ -438,7 +553,7 @@ public class SNSClient {
 
 
     public Resource getHierachy(long depth, String direction, boolean includeSiblings,
-                                String lang, String root) throws RemoteException {
+                   String lang, String root) throws RemoteException {
         return getHierachy(this.fUrlThesaurus, depth, direction, includeSiblings, lang, root);
     }
 
@@ -454,19 +569,34 @@ public class SNSClient {
      * @throws RemoteException
      */
     public Resource getHierachy(URL url, long depth, String direction, boolean includeSiblings,
-                                String lang, String root) throws RemoteException {
+                   String lang, String root) throws RemoteException {
 
         String uri = HtmlUtils.prepareUrl(url.toString());
         String host = uri;
 
-        // create an empty model
-        Model model = ModelFactory.createDefaultModel();
         String params = "?dir=" + direction + "&siblings=" + includeSiblings;
         if (depth != -1) params += "&depth=" + depth;
         if (includeSiblings) params += "&siblings=" + includeSiblings;
 
         String doc = root.substring(root.lastIndexOf("/") + 1);
-        Model hierarchy = model.read(host + lang + "/hierarchy/" + doc + ".rdf" + params);
+        String query = host + lang + "/hierarchy/" + doc + ".rdf" + params;
+
+        if (log.isDebugEnabled()) {
+            log.debug("Getting hierarchy from: {}", query);
+        }
+
+        Model hierarchy;
+        try {
+            hierarchy = readModel(SNSMetrics.HIERARCHY, query);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while fetching hierarchy: " + query, e);
+        } catch (ServiceUnavailableException e) {
+            log.debug(e.getMessage());
+            return null;
+        } catch (IOException e) {
+            throw new RemoteException("Error fetching hierarchy: " + query, e);
+        }
         return hierarchy.getResource(host + doc);
     }
 
@@ -481,14 +611,13 @@ public class SNSClient {
      * @return A topic map fragment.
      * @throws RemoteException
      */
-    public synchronized Resource getSimilarTerms(boolean ignoreCase, String[] terms, String lang) {
+    public Resource getSimilarTerms(boolean ignoreCase, String[] terms, String lang) {
 
         if ((null == terms) || (terms.length < 1)) {
             throw new IllegalArgumentException("No terms set.");
         }
 
-        // create an empty model
-        Model model = ModelFactory.createDefaultModel();
+        Model model;
 
         // prepare terms as url-parameter
         String paramTerms = "";
@@ -508,17 +637,20 @@ public class SNSClient {
 
         try {
             // read the RDF/XML file
-            model.read(query);
+            model = readModel(SNSMetrics.SIMILAR_TERMS, query);
         } catch (DoesNotExistException e) {
             log.error("The search-function does not exist: {}", query, e);
             return null;
+        } catch (ServiceUnavailableException e) {
+            log.debug(e.getMessage());
+            return null;
         } catch (Exception e) {
             log.error("The URI seems to have a problem: {}", query, e);
             return null;
         }
 
         // write it to standard out
-        if (log.isDebugEnabled()) {
+        if (log.isTraceEnabled()) {
             model.write(System.out);
         }
 
@@ -526,12 +658,133 @@ public class SNSClient {
     }
 
     /**
-     * Set timeout in milliseconds for the SN-Service connection.
+     * Set timeout in milliseconds for the SN-Service connection. The timeout is used when connecting to
+     * the service as well as for waiting on the response of a request.
      *
      * @param timeout Timeout in milliseconds.
      */
     public void setTimeout(final int timeout) {
-        //this.fSoapBinding.setTimeout(timeout);
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be greater than 0");
+        }
+        this.fTimeout = timeout;
+        this.fHttpClient = createHttpClient(timeout, HttpClient.Redirect.NORMAL);
+        this.fHttpClientNoRedirects = createHttpClient(timeout, HttpClient.Redirect.NEVER);
+    }
+
+    /**
+     * Get timeout in milliseconds for the SN-Service connection.
+     *
+     * @return Timeout in milliseconds.
+     */
+    public int getTimeout() {
+        return this.fTimeout;
+    }
+
+    /**
+     * Set the maximum number of requests which are sent in parallel to one host. Further requests wait
+     * (at most the latency budget) until a running request finished. Requests already running count
+     * against the new maximum.
+     *
+     * @param maxConnections Maximum number of parallel requests per host.
+     */
+    public void setMaxConnectionsPerHost(final int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Max connections per host must be greater than 0");
+        }
+        this.fMaxConnectionsPerHost = maxConnections;
+        for (HostPermits permits : fHostPermits.values()) {
+            permits.resize(maxConnections);
+        }
+    }
+
+    /**
+     * Set the number of retries of a failed request (no connection or server error). Only requests
+     * without side effects are retried and only within the latency budget.
+     *
+     * @param retries Number of retries, 0 for no retry.
+     */
+    public void setRetries(final int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("Retries can not be lower than 0");
+        }
+        this.fRetries = retries;
+    }
+
+    public int getRetries() {
+        return this.fRetries;
+    }
+
+    /**
+     * Set the time in milliseconds after which a request without response is sent a second time,
+     * the first response is taken. Helps against single slow responses at the cost of additional
+     * requests, a good value is a bit more than the usual response time.
+     *
+     * @param hedgeDelay Delay in milliseconds, 0 sends no second request.
+     */
+    public void setHedgeDelay(final int hedgeDelay) {
+        if (hedgeDelay < 0) {
+            throw new IllegalArgumentException("Hedge delay can not be lower than 0");
+        }
+        this.fHedgeDelay = hedgeDelay;
+    }
+
+    public int getHedgeDelay() {
+        return this.fHedgeDelay;
+    }
+
+    /**
+     * Set the time in milliseconds a request may take including the wait for a free connection,
+     * retries and hedged requests.
+     *
+     * @param latencyBudget Budget in milliseconds, 0 uses the timeout.
+     */
+    public void setLatencyBudget(final int latencyBudget) {
+        if (latencyBudget < 0) {
+            throw new IllegalArgumentException("Latency budget can not be lower than 0");
+        }
+        this.fLatencyBudget = latencyBudget;
+    }
+
+    public int getLatencyBudget() {
+        return this.fLatencyBudget;
+    }
+
+    /**
+     * Configure the circuit breakers of the services (thesaurus, gazetteer, chronicle). After the
+     * given number of failed requests in a row, requests to the service fail immediately until
+     * a trial request after the open time succeeds. Resets the state of all breakers.
+     *
+     * @param failureThreshold Number of failed requests in a row, 0 disables the circuit breakers.
+     * @param openTime Time in milliseconds until a trial request is sent.
+     */
+    public void setCircuitBreaker(final int failureThreshold, final int openTime) {
+        if (failureThreshold < 0) {
+            throw new IllegalArgumentException("Failure threshold can not be lower than 0");
+        }
+        if (openTime < 0) {
+            throw new IllegalArgumentException("Open time can not be lower than 0");
+        }
+        this.fFailureThreshold = failureThreshold;
+        this.fOpenTime = openTime;
+        this.fCircuitBreakers.clear();
+    }
+
+    /**
+     * Set the metrics the network time, parse time, payload size, errors and timeouts of all requests
+     * are recorded to.
+     *
+     * @param metrics the metrics, pass {@link SNSMetrics#NOOP} to record nothing
+     */
+    public void setMetrics(final SNSMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics can not be null, use SNSMetrics.NOOP");
+        }
+        this.fMetrics = metrics;
+    }
+
+    public SNSMetrics getMetrics() {
+        return this.fMetrics;
     }
 
     /**
@@ -542,4 +795,483 @@ public class SNSClient {
     public String getLanguage() {
         return this.fLanguage;
     }
+
+    private static HttpClient createHttpClient(int timeout, HttpClient.Redirect redirect) {
+        return HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeout))
+                .followRedirects(redirect)
+                .build();
+    }
+
+    private HttpRequest.Builder newRequest(String query) {
+        return HttpRequest.newBuilder(URI.create(query))
+                .timeout(Duration.ofMillis(fTimeout))
+                .header("Accept", "application/rdf+xml");
+    }
+
+    /**
+     * Fetches the RDF/XML document from the given url.
+     *
+     * @param endpoint the endpoint the measurements are recorded for, see {@link SNSMetrics}
+     * @param query the url to fetch, also used as the base uri of the document
+     * @return the parsed model
+     * @throws DoesNotExistException if the service responds with 404
+     */
+    private Model readModel(String endpoint, String query) throws IOException, InterruptedException {
+        return readModel(endpoint, newRequest(query).GET().build(), query);
+    }
+
+    /** Sends the request and parses the response into a new model. */
+    private Model readModel(String endpoint, HttpRequest request, String base) throws IOException, InterruptedException {
+        return execute(endpoint, request, base, (body, documentBase) -> {
+            Model model = ModelFactory.createDefaultModel();
+            model.read(body, documentBase);
+            return model;
+        });
+    }
+
+    /**
+     * Fetches the RDF/XML document from the given url and streams it into compact concepts.
+     *
+     * @param endpoint the endpoint the measurements are recorded for, see {@link SNSMetrics}
+     * @param query the url to fetch, also used as the base uri of the document
+     * @return the concepts of the document by their uri
+     * @throws DoesNotExistException if the service responds with 404
+     */
+    private Map<String, SNSConcept> readConcepts(String endpoint, String query) throws IOException, InterruptedException {
+        return execute(endpoint, newRequest(query).GET().build(), query, (body, base) -> {
+            SNSConceptCollector collector = new SNSConceptCollector();
+            try {
+                RDFParser.create().source(body).lang(Lang.RDFXML).base(base).parse(collector);
+            } catch (RiotException e) {
+                throw new IOException("Error parsing response of " + base + ": " + e.getMessage(), e);
+            }
+            return collector.getConcepts();
+        });
+    }
+
+    /** A request was not sent, because the circuit breaker of the service is open. */
+    public static class ServiceUnavailableException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public ServiceUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    /** Parses the body of a response. */
+    private interface ResponseParser<T> {
+        T parse(InputStream body, String base) throws IOException;
+    }
+
+    /**
+     * Sends the request and parses the response stream directly with the given parser. The number of
+     * parallel requests to the target host is limited by {@link #fMaxConnectionsPerHost}.<br/>
+     * Requests to a service whose circuit breaker is open fail immediately. GET requests are retried
+     * and hedged (see {@link #send(HttpRequest, Semaphore, long)}) within the latency budget. The
+     * body must be read within the same budget, otherwise it is closed and the request fails with
+     * a timeout.<br/>
+     * Network time (including the wait for a free connection and reading the body), parse time,
+     * payload size, errors and timeouts are recorded for the endpoint.
+     */
+    private <T> T execute(String endpoint, HttpRequest request, String base, ResponseParser<T> parser) throws IOException, InterruptedException {
+        SNSMetrics metrics = fMetrics;
+        long start = System.nanoTime();
+        URI uri = request.uri();
+        SNSCircuitBreaker breaker = getCircuitBreaker(uri);
+        if (!breaker.allowRequest()) {
+            // logged once when the breaker opened
+            throw new ServiceUnavailableException("Circuit breaker open, SNS service not requested: " + uri);
+        }
+        long budget = fLatencyBudget > 0 ? fLatencyBudget : fTimeout;
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(budget);
+        Semaphore permits = fHostPermits.computeIfAbsent(uri.getHost() + ":" + uri.getPort(),
+                host -> new HostPermits(fMaxConnectionsPerHost));
+        // every request without a complete answer of the service is a failure of the breaker, an
+        // interrupted one is an abort, so a trial request always ends the half open state
+        boolean answered = false;
+        boolean interrupted = false;
+        try {
+            if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                metrics.countTimeout(endpoint);
+                throw new HttpTimeoutException("No free connection to host within latency budget: " + uri.getHost());
+            }
+            try {
+                HttpResponse<InputStream> response;
+                try {
+                    response = send(request, permits, deadline);
+                } catch (HttpTimeoutException e) {
+                    metrics.countTimeout(endpoint);
+                    throw e;
+                } catch (IOException e) {
+                    metrics.countError(endpoint);
+                    throw e;
+                }
+                DeadlineInputStream deadlineBody = new DeadlineInputStream(response.body(), deadline);
+                try (MeteredInputStream body = new MeteredInputStream(deadlineBody)) {
+                    int status = response.statusCode();
+                    // the service answers, also a missing term is no failure of the service
+                    answered = status < 500;
+                    if (status == 404) {
+                        throw new DoesNotExistException(uri.toString());
+                    }
+                    if (status < 200 || status >= 300) {
+                        metrics.countError(endpoint);
+                        throw new IOException("Unexpected response status " + status + " from: " + uri);
+                    }
+
+                    long parseStart = System.nanoTime();
+                    T result;
+                    try {
+                        result = parser.parse(body, base);
+                    } catch (IOException | RuntimeException e) {
+                        if (deadlineBody.expired) {
+                            // the body stalled
+                            answered = false;
+                            metrics.countTimeout(endpoint);
+                            throw new HttpTimeoutException("Response body not read within latency budget: " + uri);
+                        }
+                        metrics.countError(endpoint);
+                        throw e;
+                    }
+                    long networkTime = parseStart - start + body.readTime;
+                    long parseTime = System.nanoTime() - parseStart - body.readTime;
+                    metrics.recordTime(endpoint, SNSMetrics.Phase.NETWORK, networkTime);
+                    metrics.recordTime(endpoint, SNSMetrics.Phase.PARSE, parseTime);
+                    metrics.recordPayload(endpoint, body.bytes);
+
+                    if (log.isDebugEnabled()) {
+                        log.debug("{} {}: network {}ms, parse {}ms, {} bytes", endpoint, uri,
+                                networkTime / 1000000, parseTime / 1000000, body.bytes);
+                    }
+                    return result;
+                }
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            throw e;
+        } finally {
+            if (interrupted) {
+                breaker.recordAbort();
+            } else if (answered) {
+                if (breaker.recordSuccess()) {
+                    log.info("SNS service available again: {}", uri);
+                }
+            } else if (breaker.recordFailure()) {
+                log.warn("SNS service not available, requests fail for the next {}ms: {}", fOpenTime, uri);
+            }
+        }
+    }
+
+    /**
+     * Sends the request until a response arrives before the deadline. A GET request which failed or
+     * got a server error (5xx) is retried {@link #fRetries} times while the deadline is not reached,
+     * the delay before a retry doubles with every attempt (starting with {@link #RETRY_DELAY}).
+     * If a GET request got no response after {@link #fHedgeDelay}, the same request is sent a second
+     * time (if a connection to the host is free) and the first response is taken.
+     *
+     * @param permits the free connections to the host, one is already taken by the caller
+     * @param deadline the end of the latency budget as {@link System#nanoTime()}
+     * @return the response, may have any status
+     */
+    private HttpResponse<InputStream> send(HttpRequest request, Semaphore permits, long deadline) throws IOException, InterruptedException {
+        boolean idempotent = "GET".equals(request.method());
+        int attempts = idempotent ? fRetries + 1 : 1;
+        IOException failure = null;
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            if (attempt > 0) {
+                long delay = RETRY_DELAY << (attempt - 1);
+                if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) >= deadline) {
+                    break;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Retrying request {} in {}ms after: {}", request.uri(), delay, failure.getMessage());
+                }
+                Thread.sleep(delay);
+            }
+            HttpResponse<InputStream> response;
+            try {
+                response = sendHedged(request, idempotent ? fHedgeDelay : 0, permits, deadline);
+            } catch (HttpTimeoutException e) {
+                // the budget is used up
+                throw e;
+            } catch (IOException e) {
+                failure = e;
+                if (System.nanoTime() >= deadline) break;
+                continue;
+            }
+            if (response.statusCode() < 500 || attempt == attempts - 1 || System.nanoTime() >= deadline) {
+                return response;
+            }
+            discard(response);
+            failure = new IOException("Unexpected response status " + response.statusCode() + " from: " + request.uri());
+        }
+        throw failure;
+    }
+
+    /**
+     * Sends the request and waits for the response until the deadline, hedged by a second request
+     * after the given delay (0 for no second request).
+     */
+    private HttpResponse<InputStream> sendHedged(HttpRequest request, long hedgeDelay, Semaphore permits, long deadline)
+            throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<InputStream>> response = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        sendAsync(request, response, pending, null);
+        try {
+            long hedgeAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(hedgeDelay);
+            if (hedgeDelay > 0 && hedgeAt < deadline) {
+                try {
+                    return response.get(hedgeDelay, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // use a free connection only, the hedged request must not delay other requests
+                    if (permits.tryAcquire()) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("No response after {}ms, sending hedged request: {}", hedgeDelay, request.uri());
+                        }
+                        pending.incrementAndGet();
+                        sendAsync(request, response, pending, permits);
+                    }
+                }
+            }
+            return response.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new HttpTimeoutException("No response within latency budget: " + request.uri());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error sending request: " + request.uri(), cause);
+        } finally {
+            // a response arriving too late is discarded
+            response.cancel(false);
+        }
+    }
+
+    /**
+     * Sends the request asynchronously. The first response completes the result, later ones are
+     * discarded. The result fails when all pending requests failed.
+     *
+     * @param permit the connection permit to release when the request failed or the body of its
+     *            response is closed or read completely, may be null
+     */
+    private void sendAsync(HttpRequest request, CompletableFuture<HttpResponse<InputStream>> result, AtomicInteger pending, Semaphore permit) {
+        HttpClient client = "GET".equals(request.method()) ? fHttpClient : fHttpClientNoRedirects;
+        HttpResponse.BodyHandler<InputStream> bodyHandler = HttpResponse.BodyHandlers.ofInputStream();
+        Runnable release = () -> {};
+        if (permit != null) {
+            AtomicBoolean released = new AtomicBoolean();
+            release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    permit.release();
+                }
+            };
+            Runnable releaseBody = release;
+            bodyHandler = responseInfo -> HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                    body -> new ReleasingInputStream(body, releaseBody));
+        }
+        Runnable releaseFailed = release;
+        client.sendAsync(request, bodyHandler).whenComplete((response, error) -> {
+            if (error == null) {
+                if (!result.complete(response)) {
+                    discard(response);
+                }
+            } else {
+                releaseFailed.run();
+                if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                }
+            }
+        });
+    }
+
+    /** Closes the body of an unused response, which releases the connection. */
+    private static void discard(HttpResponse<InputStream> response) {
+        try {
+            response.body().close();
+        } catch (IOException e) {
+            log.debug("Error discarding response", e);
+        }
+    }
+
+    /**
+     * Get the circuit breaker of the service the given uri belongs to: thesaurus, gazetteer,
+     * chronicle or for other thesauri the host.
+     */
+    private SNSCircuitBreaker getCircuitBreaker(URI uri) {
+        String target = uri.toString();
+        String key = uri.getScheme() + "://" + uri.getAuthority() + "/";
+        for (URL serviceUrl : new URL[] { fUrlThesaurus, fUrlGazetteer, fUrlChronicle }) {
+            if (serviceUrl != null) {
+                String service = HtmlUtils.prepareUrl(serviceUrl.toString());
+                if (target.startsWith(service)) {
+                    key = service;
+                    break;
+                }
+            }
+        }
+        return fCircuitBreakers.computeIfAbsent(key, k -> new SNSCircuitBreaker(fFailureThreshold, fOpenTime));
+    }
+
+    /**
+     * Check whether the service of the given type can be requested.
+     *
+     * @return false if the circuit breaker of the service is open
+     */
+    public boolean isAvailable(FilterType type) {
+        return isAvailable(getUrlByFilter(type));
+    }
+
+    /**
+     * Check whether the service with the given url can be requested.
+     *
+     * @return false if the circuit breaker of the service is open
+     */
+    public boolean isAvailable(String url) {
+        return !getCircuitBreaker(URI.create(HtmlUtils.prepareUrl(url))).isOpen();
+    }
+
+    /**
+     * Counts the bytes read from the response body and the time spent waiting for them, so that
+     * network and parse time can be told apart while parsing the stream.
+     */
+    private static class MeteredInputStream extends FilterInputStream {
+
+        long bytes;
+        long readTime;
+
+        MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            readTime += System.nanoTime() - start;
+            if (b >= 0) bytes++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int n = super.read(buffer, offset, length);
+            readTime += System.nanoTime() - start;
+            if (n > 0) bytes += n;
+            return n;
+        }
+    }
+
+    /**
+     * Closes the body when the deadline passed, so a body which stalls does not block the reading
+     * thread. Reads after the deadline fail.
+     */
+    private static class DeadlineInputStream extends FilterInputStream {
+
+        volatile boolean expired;
+        private final ScheduledFuture<?> closer;
+
+        /** @param deadline the end of the latency budget as {@link System#nanoTime()} */
+        DeadlineInputStream(InputStream in, long deadline) {
+            super(in);
+            closer = BODY_DEADLINES.schedule(this::expire, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+
+        private void expire() {
+            expired = true;
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.debug("Error closing response after deadline", e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            checkDeadline();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            checkDeadline();
+            return n;
+        }
+
+        private void checkDeadline() throws HttpTimeoutException {
+            if (expired) {
+                throw new HttpTimeoutException("Response body not read within latency budget");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closer.cancel(false);
+            super.close();
+        }
+    }
+
+    /** Runs the given action once when the body is closed or read completely. */
+    private static class ReleasingInputStream extends FilterInputStream {
+
+        private final Runnable release;
+
+        ReleasingInputStream(InputStream in, Runnable release) {
+            super(in);
+            this.release = release;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) release.run();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n < 0) release.run();
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                release.run();
+            }
+        }
+    }
+
+    /** Permits of the requests to one host, the number of permits can be changed while requests are running. */
+    private static final class HostPermits extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        private int max;
+
+        HostPermits(int max) {
+            super(max, true);
+            this.max = max;
+        }
+
+        synchronized void resize(int newMax) {
+            int delta = newMax - max;
+            max = newMax;
+            if (delta > 0) {
+                release(delta);
+            } else if (delta < 0) {
+                reducePermits(-delta);
+            }
+        }
+    }
 }
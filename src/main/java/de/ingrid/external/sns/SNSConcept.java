@@ -0,0 +1,280 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ * 
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact representation of a SKOS concept with the properties needed for mapping it to terms,
+ * locations and tree terms. Filled by the {@link SNSConceptCollector} while parsing and afterwards
+ * only read.
+ */
+public class SNSConcept {
+
+    private final String uri;
+    private String link;
+    private String type;
+    private boolean skosConcept;
+    private boolean topConcept;
+    private String memberOf;
+    private String closeMatch;
+    private String expires;
+
+    private final Map<String, String> prefLabels = new HashMap<String, String>(4);
+    private Map<String, String> officialNames = Collections.emptyMap();
+    private Map<String, List<String>> altLabels = Collections.emptyMap();
+
+    private List<String> broader = Collections.emptyList();
+    private List<String> narrower = Collections.emptyList();
+    private List<String> related = Collections.emptyList();
+    private List<String> successors = Collections.emptyList();
+    private List<String> boundingBoxes = Collections.emptyList();
+    private List<String[]> notations = Collections.emptyList();
+
+    public SNSConcept(String uri) {
+        this.uri = uri;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * Get the id of the concept like {@link RDFUtils#getId(org.apache.jena.rdf.model.Resource)}: the
+     * link of a search result (sdc:link) or else the uri.
+     */
+    public String getId() {
+        return link != null ? link : uri;
+    }
+
+    /**
+     * Get the label of the concept in the given language with the same precedence as
+     * {@link RDFUtils#getName(org.apache.jena.rdf.model.Resource, String)}.
+     */
+    public String getName(String lang) {
+        String name = prefLabels.get(lang);
+        if (name == null) name = officialNames.get(lang);
+        if (name == null) {
+            List<String> labels = altLabels.get(lang);
+            if (labels != null && !labels.isEmpty()) name = labels.get(0);
+        }
+        return name;
+    }
+
+    public Map<String, String> getPrefLabels() {
+        return prefLabels;
+    }
+
+    public Map<String, String> getOfficialNames() {
+        return officialNames;
+    }
+
+    public List<String> getAltLabels(String lang) {
+        List<String> labels = altLabels.get(lang);
+        return labels == null ? Collections.<String>emptyList() : labels;
+    }
+
+    public Map<String, List<String>> getAltLabels() {
+        return altLabels;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return true if the resource is typed skos:Concept, e.g. false for the concept scheme
+     */
+    public boolean isSkosConcept() {
+        return skosConcept;
+    }
+
+    public boolean isTopConcept() {
+        return topConcept;
+    }
+
+    public String getMemberOf() {
+        return memberOf;
+    }
+
+    public String getCloseMatch() {
+        return closeMatch;
+    }
+
+    public String getExpires() {
+        return expires;
+    }
+
+    public List<String> getBroader() {
+        return broader;
+    }
+
+    public List<String> getNarrower() {
+        return narrower;
+    }
+
+    public List<String> getRelated() {
+        return related;
+    }
+
+    public List<String> getSuccessors() {
+        return successors;
+    }
+
+    public List<String> getBoundingBoxes() {
+        return boundingBoxes;
+    }
+
+    /**
+     * Get the value of the first notation whose datatype contains the given key prefix, like
+     * {@link RDFUtils#getNativeKey(org.apache.jena.rdf.model.Resource, String)}.
+     */
+    public String getNotation(String keyPrefix) {
+        for (String[] notation : notations) {
+            if (notation[0] != null && notation[0].contains(keyPrefix)) {
+                return notation[1];
+            }
+        }
+        return null;
+    }
+
+    // ----------------------- filled while parsing -----------------------------------
+
+    void setLink(String link) {
+        if (this.link == null) this.link = link;
+    }
+
+    void setType(String type) {
+        if (this.type == null) this.type = type;
+    }
+
+    void setSkosConcept(boolean skosConcept) {
+        this.skosConcept = skosConcept;
+    }
+
+    void setTopConcept(boolean topConcept) {
+        this.topConcept = topConcept;
+    }
+
+    void setMemberOf(String memberOf) {
+        if (this.memberOf == null) this.memberOf = memberOf;
+    }
+
+    void setCloseMatch(String closeMatch) {
+        if (this.closeMatch == null) this.closeMatch = closeMatch;
+    }
+
+    void setExpires(String expires) {
+        if (this.expires == null) this.expires = expires;
+    }
+
+    void addPrefLabel(String lang, String label) {
+        prefLabels.putIfAbsent(lang, label);
+    }
+
+    void addOfficialName(String lang, String name) {
+        if (officialNames.isEmpty()) officialNames = new HashMap<String, String>(4);
+        officialNames.putIfAbsent(lang, name);
+    }
+
+    void addAltLabel(String lang, String label) {
+        if (altLabels.isEmpty()) altLabels = new HashMap<String, List<String>>(4);
+        altLabels.computeIfAbsent(lang, l -> new ArrayList<String>(2)).add(label);
+    }
+
+    void addBroader(String id) {
+        broader = add(broader, id);
+    }
+
+    void addNarrower(String id) {
+        narrower = add(narrower, id);
+    }
+
+    void addRelated(String id) {
+        related = add(related, id);
+    }
+
+    void addSuccessor(String id) {
+        successors = add(successors, id);
+    }
+
+    void addBoundingBox(String bbox) {
+        boundingBoxes = add(boundingBoxes, bbox);
+    }
+
+    void addNotation(String datatype, String value) {
+        if (notations.isEmpty()) notations = new ArrayList<String[]>(2);
+        notations.add(new String[] { datatype, value });
+    }
+
+    /**
+     * Merge the properties of the same concept stated in two documents, e.g. a dump and a delta.
+     * Every property stated in the later document (labels per language) replaces the one of the
+     * earlier document, all other properties are kept. Both concepts stay unchanged.
+     *
+     * @param earlier the concept of the earlier document
+     * @param later the concept of the later document
+     * @return the merged concept
+     */
+    static SNSConcept merge(SNSConcept earlier, SNSConcept later) {
+        SNSConcept result = new SNSConcept(later.uri);
+        result.link = later.link != null ? later.link : earlier.link;
+        result.type = later.type != null ? later.type : earlier.type;
+        result.skosConcept = earlier.skosConcept || later.skosConcept;
+        result.topConcept = earlier.topConcept || later.topConcept;
+        result.memberOf = later.memberOf != null ? later.memberOf : earlier.memberOf;
+        result.closeMatch = later.closeMatch != null ? later.closeMatch : earlier.closeMatch;
+        result.expires = later.expires != null ? later.expires : earlier.expires;
+
+        result.prefLabels.putAll(earlier.prefLabels);
+        result.prefLabels.putAll(later.prefLabels);
+        result.officialNames = merge(earlier.officialNames, later.officialNames);
+        result.altLabels = merge(earlier.altLabels, later.altLabels);
+
+        result.broader = later.broader.isEmpty() ? earlier.broader : later.broader;
+        result.narrower = later.narrower.isEmpty() ? earlier.narrower : later.narrower;
+        result.related = later.related.isEmpty() ? earlier.related : later.related;
+        result.successors = later.successors.isEmpty() ? earlier.successors : later.successors;
+        result.boundingBoxes = later.boundingBoxes.isEmpty() ? earlier.boundingBoxes : later.boundingBoxes;
+        result.notations = later.notations.isEmpty() ? earlier.notations : later.notations;
+        return result;
+    }
+
+    private static <T> Map<String, T> merge(Map<String, T> earlier, Map<String, T> later) {
+        if (later.isEmpty()) return earlier;
+        if (earlier.isEmpty()) return later;
+        Map<String, T> result = new HashMap<String, T>(earlier);
+        result.putAll(later);
+        return result;
+    }
+
+    private static List<String> add(List<String> list, String value) {
+        if (list.isEmpty()) list = new ArrayList<String>(2);
+        if (!list.contains(value)) list.add(value);
+        return list;
+    }
+}
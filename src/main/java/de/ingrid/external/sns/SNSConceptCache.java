@@ -0,0 +1,226 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ * 
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+import de.ingrid.external.om.Event;
+import de.ingrid.external.om.Link;
+import de.ingrid.external.om.Location;
+import de.ingrid.external.om.RelatedTerm;
+import de.ingrid.external.om.Term;
+import de.ingrid.external.om.impl.EventImpl;
+import de.ingrid.external.om.impl.LinkImpl;
+import de.ingrid.external.om.impl.LocationImpl;
+import de.ingrid.external.om.impl.RelatedTermImpl;
+import de.ingrid.external.om.impl.TermImpl;
+
+/**
+ * Cache for mapped SNS concepts (terms, locations, events and related terms of a term), keyed by
+ * service url, concept id and language.
+ * <p>
+ * Only copies of the mapped objects are stored and handed out, so callers may modify the returned
+ * objects. The expired state of a location is determined again on every access, so a location
+ * which expired after it was cached is reported as expired.
+ */
+public class SNSConceptCache {
+
+    private enum Kind { TERM, LOCATION, EVENT, RELATED_TERMS }
+
+    private final SNSCache<ConceptKey, Object> cache;
+
+    /**
+     * @param maxEntries maximum number of cached concepts, pass 0 to disable the cache
+     * @param timeToLive time to live of a cached concept in milliseconds
+     */
+    public SNSConceptCache(int maxEntries, long timeToLive) {
+        this.cache = new SNSCache<>(maxEntries, timeToLive);
+    }
+
+    public Term getTerm(String serviceUrl, String termId, String lang) {
+        Term term = (Term) cache.get(new ConceptKey(Kind.TERM, serviceUrl, termId, lang));
+        return term == null ? null : copy(term);
+    }
+
+    public void putTerm(String serviceUrl, String termId, String lang, Term term) {
+        if (term != null) {
+            cache.put(new ConceptKey(Kind.TERM, serviceUrl, termId, lang), copy(term));
+        }
+    }
+
+    public Location getLocation(String serviceUrl, String locationId, String lang) {
+        Location location = (Location) cache.get(new ConceptKey(Kind.LOCATION, serviceUrl, locationId, lang));
+        if (location == null) {
+            return null;
+        }
+        return copyCurrent(location);
+    }
+
+    public void putLocation(String serviceUrl, String locationId, String lang, Location location) {
+        if (location != null) {
+            cache.put(new ConceptKey(Kind.LOCATION, serviceUrl, locationId, lang), copy(location));
+        }
+    }
+
+    public Event getEvent(String serviceUrl, String eventId, String lang) {
+        Event event = (Event) cache.get(new ConceptKey(Kind.EVENT, serviceUrl, eventId, lang));
+        return event == null ? null : copy(event);
+    }
+
+    public void putEvent(String serviceUrl, String eventId, String lang, Event event) {
+        if (event != null) {
+            cache.put(new ConceptKey(Kind.EVENT, serviceUrl, eventId, lang), copy(event));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<RelatedTerm> getRelatedTerms(String serviceUrl, String termId, String lang) {
+        List<RelatedTerm> terms = (List<RelatedTerm>) cache.get(new ConceptKey(Kind.RELATED_TERMS, serviceUrl, termId, lang));
+        return terms == null ? null : copy(terms);
+    }
+
+    public void putRelatedTerms(String serviceUrl, String termId, String lang, List<RelatedTerm> terms) {
+        if (terms != null) {
+            cache.put(new ConceptKey(Kind.RELATED_TERMS, serviceUrl, termId, lang), copy(terms));
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public SNSCache.Statistics getStatistics() {
+        return cache.getStatistics();
+    }
+
+    static Term copy(Term term) {
+        return copy(term, new TermImpl());
+    }
+
+    private static <T extends Term> T copy(Term term, T result) {
+        result.setId(term.getId());
+        result.setName(term.getName());
+        result.setType(term.getType());
+        result.setAlternateId(term.getAlternateId());
+        result.setAlternateName(term.getAlternateName());
+        List<String> inspireThemes = term.getInspireThemes();
+        result.setInspireThemes(inspireThemes == null ? null : new ArrayList<String>(inspireThemes));
+        return result;
+    }
+
+    /**
+     * Copy a stored location, the expired flag is checked again as the location may have expired
+     * since it was stored.
+     */
+    static Location copyCurrent(Location location) {
+        Location result = copy(location);
+        if (result.getExpiredDate() != null) {
+            result.setIsExpired(SNSMapper.isExpired(result.getExpiredDate()));
+        }
+        return result;
+    }
+
+    static Location copy(Location location) {
+        Location result = new LocationImpl();
+        result.setId(location.getId());
+        result.setName(location.getName());
+        result.setTypeId(location.getTypeId());
+        result.setTypeName(location.getTypeName());
+        result.setQualifier(location.getQualifier());
+        result.setNativeKey(location.getNativeKey());
+        float[] bbox = location.getBoundingBox();
+        if (bbox != null && bbox.length == 4) {
+            result.setBoundingBox(bbox[0], bbox[1], bbox[2], bbox[3]);
+        }
+        result.setIsExpired(location.getIsExpired());
+        result.setExpiredDate(location.getExpiredDate());
+        String[] successors = location.getSuccessorIds();
+        result.setSuccessorIds(successors == null ? null : successors.clone());
+        return result;
+    }
+
+    private static Event copy(Event event) {
+        Event result = new EventImpl();
+        result.setId(event.getId());
+        result.setTitle(event.getTitle());
+        result.setTypeId(event.getTypeId());
+        result.setDescription(event.getDescription());
+        result.setTimeAt(copy(event.getTimeAt()));
+        result.setTimeRangeFrom(copy(event.getTimeRangeFrom()));
+        result.setTimeRangeTo(copy(event.getTimeRangeTo()));
+        if (event.getLinks() != null) {
+            for (Link link : event.getLinks()) {
+                Link l = new LinkImpl();
+                l.setTitle(link.getTitle());
+                l.setLinkAddress(link.getLinkAddress());
+                result.addLink(l);
+            }
+        }
+        return result;
+    }
+
+    private static List<RelatedTerm> copy(List<RelatedTerm> terms) {
+        List<RelatedTerm> result = new ArrayList<RelatedTerm>(terms.size());
+        for (RelatedTerm term : terms) {
+            RelatedTerm rt = copy(term, new RelatedTermImpl());
+            rt.setRelationType(term.getRelationType());
+            result.add(rt);
+        }
+        return result;
+    }
+
+    private static Date copy(Date date) {
+        return date == null ? null : new Date(date.getTime());
+    }
+
+    private static final class ConceptKey {
+        private final Kind kind;
+        private final String serviceUrl;
+        private final String conceptId;
+        private final String lang;
+
+        private ConceptKey(Kind kind, String serviceUrl, String conceptId, String lang) {
+            this.kind = kind;
+            this.serviceUrl = serviceUrl;
+            this.conceptId = conceptId;
+            this.lang = lang;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ConceptKey)) return false;
+            ConceptKey other = (ConceptKey) o;
+            return kind == other.kind && Objects.equals(serviceUrl, other.serviceUrl)
+                    && Objects.equals(conceptId, other.conceptId) && Objects.equals(lang, other.lang);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, serviceUrl, conceptId, lang);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ * 
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+/**
+ * Sink for the Jena RIOT parser which collects the SKOS properties of all concepts into
+ * {@link SNSConcept}s, without building an in-memory graph of the whole document.
+ */
+public class SNSConceptCollector extends StreamRDFBase {
+
+    static final String NS_RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    static final String NS_SKOS = "http://www.w3.org/2004/02/skos/core#";
+    static final String NS_SKOSXL = "http://www.w3.org/2008/05/skos-xl#";
+    static final String NS_SCHEMA = "http://schema.org/";
+    static final String NS_SDC = "http://sindice.com/vocab/search#";
+    // SNS uses the geonames namespace with and without "#"
+    static final String NS_GEONAMES = "http://www.geonames.org/ontology";
+
+    private static final String RDF_TYPE = NS_RDF + "type";
+    private static final String SKOS_CONCEPT = NS_SKOS + "Concept";
+    private static final String SDC_LINK = NS_SDC + "link";
+
+    private final Map<String, SNSConcept> concepts = new LinkedHashMap<String, SNSConcept>();
+
+    /**
+     * @return all collected concepts by their uri, in the order of their first occurrence
+     */
+    public Map<String, SNSConcept> getConcepts() {
+        return concepts;
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        Node subject = triple.getSubject();
+        if (!subject.isURI()) {
+            return;
+        }
+        String predicate = triple.getPredicate().getURI();
+        Node object = triple.getObject();
+
+        if (RDF_TYPE.equals(predicate)) {
+            if (object.isURI()) {
+                SNSConcept concept = concept(subject);
+                concept.setType(object.getURI());
+                if (SKOS_CONCEPT.equals(object.getURI())) concept.setSkosConcept(true);
+            }
+        } else if (predicate.startsWith(NS_SKOS)) {
+            handleSkos(subject, predicate.substring(NS_SKOS.length()), object);
+        } else if (predicate.startsWith(NS_SKOSXL)) {
+            if ("prefLabel".equals(predicate.substring(NS_SKOSXL.length())) && isLabel(object)) {
+                concept(subject).addPrefLabel(object.getLiteralLanguage(), object.getLiteralLexicalForm());
+            }
+        } else if (predicate.startsWith(NS_SCHEMA)) {
+            String name = predicate.substring(NS_SCHEMA.length());
+            if ("memberOf".equals(name) && object.isURI()) {
+                concept(subject).setMemberOf(object.getURI());
+            } else if ("expires".equals(name) && object.isLiteral()) {
+                concept(subject).setExpires(object.getLiteralLexicalForm());
+            }
+        } else if (SDC_LINK.equals(predicate)) {
+            if (object.isURI()) concept(subject).setLink(object.getURI());
+            else if (object.isLiteral()) concept(subject).setLink(object.getLiteralLexicalForm());
+        } else if (predicate.startsWith(NS_GEONAMES)) {
+            handleGeonames(subject, stripSeparator(predicate.substring(NS_GEONAMES.length())), object);
+        }
+    }
+
+    private void handleSkos(Node subject, String name, Node object) {
+        switch (name) {
+            case "prefLabel":
+                if (isLabel(object)) concept(subject).addPrefLabel(object.getLiteralLanguage(), object.getLiteralLexicalForm());
+                break;
+            case "altLabel":
+                if (isLabel(object)) concept(subject).addAltLabel(object.getLiteralLanguage(), object.getLiteralLexicalForm());
+                break;
+            case "officialName":
+                if (isLabel(object)) concept(subject).addOfficialName(object.getLiteralLanguage(), object.getLiteralLexicalForm());
+                break;
+            case "broader":
+                if (object.isURI()) concept(subject).addBroader(object.getURI());
+                break;
+            case "narrower":
+                if (object.isURI()) concept(subject).addNarrower(object.getURI());
+                break;
+            case "related":
+                if (object.isURI()) concept(subject).addRelated(object.getURI());
+                break;
+            case "topConceptOf":
+                concept(subject).setTopConcept(true);
+                break;
+            case "hasTopConcept":
+                if (object.isURI()) concept(object).setTopConcept(true);
+                break;
+            case "closeMatch":
+                if (object.isURI()) concept(subject).setCloseMatch(object.getURI());
+                break;
+            case "notation":
+                if (object.isLiteral()) concept(subject).addNotation(object.getLiteralDatatypeURI(), object.getLiteralLexicalForm());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void handleGeonames(Node subject, String name, Node object) {
+        if ("officialName".equals(name) && isLabel(object)) {
+            concept(subject).addOfficialName(object.getLiteralLanguage(), object.getLiteralLexicalForm());
+        } else if ("boundingBox".equals(name) && object.isLiteral()) {
+            concept(subject).addBoundingBox(object.getLiteralLexicalForm());
+        } else if ("successor".equals(name) && object.isURI()) {
+            concept(subject).addSuccessor(object.getURI());
+        }
+    }
+
+    private SNSConcept concept(Node node) {
+        return concepts.computeIfAbsent(node.getURI(), SNSConcept::new);
+    }
+
+    private static boolean isLabel(Node node) {
+        return node.isLiteral() && !node.getLiteralLanguage().isEmpty();
+    }
+
+    private static String stripSeparator(String name) {
+        return name.startsWith("#") || name.startsWith("/") ? name.substring(1) : name;
+    }
+}
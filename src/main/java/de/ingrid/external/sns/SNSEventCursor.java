@@ -0,0 +1,216 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.jena.rdf.model.NodeIterator;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Cursor over the event ids of one chronicle search in all requested collections.
+ * <p>
+ * SNS only delivers fixed pages of search results and only searches one collection per request.
+ * The cursor keeps the ids fetched so far, so a following page of the same search only requests
+ * the SNS pages not fetched yet. The collections are merged one after another, the next collection
+ * is only requested when the former one has no more results. Ids found before (e.g. in another
+ * collection) are skipped. After a call the next SNS page is requested in the background.
+ * <p>
+ * A collection ends with an empty page or when its total number of results (sdc:totalResults) is
+ * fetched. If SNS delivers no total, it ends with a page shorter than
+ * {@link SNSClient#NUM_SEARCH_RESULTS}.
+ */
+public class SNSEventCursor {
+
+    private final static Logger log = LogManager.getLogger( SNSEventCursor.class );
+
+    /** Requests a page of the search in the given collection. */
+    public interface PageFetcher {
+        /**
+         * @return the search result or null if the request failed
+         */
+        Resource fetch(String collection, int page) throws IOException;
+    }
+
+    private final String[] collections;
+    private final PageFetcher fetcher;
+    private final SNSParallelResolver resolver;
+
+    private final List<String> eventIds = new ArrayList<>();
+    private final Set<String> seen = new HashSet<>();
+
+    // position of the next page to fetch
+    private int collection;
+    private int page = SNSClient.PAGE_START;
+    private int resultsOfCollection;
+    private boolean exhausted;
+
+    private volatile Future<Resource> prefetched;
+    private volatile boolean cancelled;
+
+    /**
+     * @param collections the collections to search, an empty string searches all
+     * @param fetcher requests a page of the search
+     * @param resolver executes the background requests, null to only request pages when needed
+     */
+    public SNSEventCursor(String[] collections, PageFetcher fetcher, SNSParallelResolver resolver) {
+        this.collections = collections.length == 0 ? new String[] { "" } : collections.clone();
+        this.fetcher = fetcher;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Get the ids of the results from "start" on, SNS is only requested for results not fetched yet.
+     *
+     * @return at most "length" ids, fewer if the search has no more results or a request failed
+     */
+    public synchronized List<String> getEventIds(int start, int length) throws IOException {
+        int end = start + length;
+        while (eventIds.size() < end && !exhausted) {
+            if (!fetchNextPage()) {
+                break;
+            }
+        }
+        if (!exhausted && prefetched == null && resolver != null && !cancelled) {
+            String nextCollection = collections[collection];
+            int nextPage = page;
+            Future<Resource> next = resolver.submit( () -> fetcher.fetch( nextCollection, nextPage ) );
+            prefetched = next;
+            if (next != null && cancelled) {
+                // cancelled meanwhile
+                next.cancel( true );
+            }
+        }
+        return new ArrayList<>( eventIds.subList( Math.min( start, eventIds.size() ), Math.min( end, eventIds.size() ) ) );
+    }
+
+    /**
+     * @return true if all results of all collections were fetched
+     */
+    public synchronized boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * @return number of ids fetched so far
+     */
+    public synchronized int size() {
+        return eventIds.size();
+    }
+
+    /**
+     * Cancel the request in the background and do not start new ones, e.g. when the cursor is no
+     * longer kept. The cursor can still be used, the pages are then requested when needed.
+     */
+    public void cancel() {
+        cancelled = true;
+        Future<Resource> running = prefetched;
+        if (running != null) {
+            running.cancel( true );
+        }
+    }
+
+    /** @return false if the request failed */
+    private boolean fetchNextPage() throws IOException {
+        Resource eventsRes = null;
+        if (prefetched != null) {
+            eventsRes = getPrefetched();
+            prefetched = null;
+        }
+        if (eventsRes == null) {
+            eventsRes = fetcher.fetch( collections[collection], page );
+        }
+        if (eventsRes == null) {
+            return false;
+        }
+
+        List<Resource> results = new ArrayList<>();
+        NodeIterator it = RDFUtils.getResults( eventsRes );
+        while (it.hasNext()) {
+            RDFNode node = it.next();
+            if (node.isResource()) {
+                results.add( node.asResource() );
+            }
+        }
+        // the results are not ordered in the model, but numbered by their uri (e.g. "...#result12")
+        results.sort( Comparator.comparingInt( SNSEventCursor::getResultNumber ) );
+        for (Resource result : results) {
+            String eventId = RDFUtils.getEventId( result );
+            if (eventId != null && seen.add( eventId )) {
+                eventIds.add( eventId );
+            }
+        }
+
+        resultsOfCollection += results.size();
+        page++;
+        int totalResults = RDFUtils.getTotalResults( eventsRes.getModel() );
+        boolean lastPage = totalResults > 0 ? resultsOfCollection >= totalResults : results.size() < SNSClient.NUM_SEARCH_RESULTS;
+        if (results.isEmpty() || lastPage) {
+            collection++;
+            page = SNSClient.PAGE_START;
+            resultsOfCollection = 0;
+            exhausted = collection == collections.length;
+        }
+        return true;
+    }
+
+    /** @return the page requested in the background or null if it failed, then it is requested again */
+    private Resource getPrefetched() {
+        try {
+            return prefetched.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.warn( "Error prefetching events, requesting again", e.getCause() );
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        }
+    }
+
+    private static int getResultNumber(Resource result) {
+        String uri = result.getURI();
+        if (uri != null) {
+            int i = uri.length();
+            while (i > 0 && Character.isDigit( uri.charAt( i - 1 ) )) {
+                i--;
+            }
+            if (i < uri.length() && uri.length() - i < 10) {
+                return Integer.parseInt( uri.substring( i ) );
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+}
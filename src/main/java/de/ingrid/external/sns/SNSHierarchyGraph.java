@@ -0,0 +1,408 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.ingrid.external.om.Term;
+import de.ingrid.external.om.TreeTerm;
+import de.ingrid.external.om.impl.TreeTermImpl;
+import de.ingrid.external.sns.SNSMapper.HierarchyDirection;
+
+/**
+ * Broader/narrower graph of the terms of one thesaurus in one language, filled from the results of
+ * the SNS hierarchy requests and shared by all requests.<br/>
+ * Only the part of the hierarchy which is not known yet is fetched from SNS: a path to the top is
+ * completed by fetching all unknown ancestors of one level in parallel, and a term which is already
+ * being fetched by another request is not fetched a second time.
+ */
+public class SNSHierarchyGraph {
+
+    private final static Logger log = LogManager.getLogger( SNSHierarchyGraph.class );
+
+    /** Fetches a hierarchy from SNS, returns the resource of the root or null on error. */
+    public interface Fetcher {
+        Resource fetch(String root, long depth, HierarchyDirection direction);
+    }
+
+    private final String langFilter;
+    private final SNSMetrics metrics;
+    private final long created = System.currentTimeMillis();
+
+    private final Map<String, Node> nodes = new HashMap<>();
+    // requested ids which differ from the id of the fetched term (e.g. "_00001" or another scheme)
+    private final Map<String, String> aliases = new HashMap<>();
+    // ids of the top terms, null if not fetched yet
+    private List<String> topTerms;
+
+    // running requests, key is direction and root
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param langFilter the language of the names in the fetched hierarchies
+     * @param metrics records the time of adding fetched hierarchies as map phase of
+     *            {@link SNSMetrics#HIERARCHY}
+     */
+    public SNSHierarchyGraph(String langFilter, SNSMetrics metrics) {
+        this.langFilter = langFilter;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the number of terms in the graph
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return the creation time of the graph in milliseconds
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * Get the top terms of the thesaurus, fetched from SNS only on the first call. Every top term
+     * gets a dummy child, assuming all top terms have children.
+     *
+     * @return the top terms or null if they could not be fetched
+     */
+    public List<TreeTerm> getTopTerms(Fetcher fetcher) {
+        if (getTopTermIds() == null) {
+            // depth 0 is enough, the root nodes are assumed to have children
+            fetch( null, 0, HierarchyDirection.DOWN, fetcher );
+        }
+
+        synchronized (this) {
+            if (topTerms == null) {
+                return null;
+            }
+            List<TreeTerm> resultList = new ArrayList<>( topTerms.size() );
+            for (String id : topTerms) {
+                TreeTerm treeTerm = createTreeTerm( id );
+                // always add a (dummy) child, needed for presentation ("plus"-sign in front of node)
+                TreeTerm dummyChild = new TreeTermImpl();
+                dummyChild.setId( "dummy" );
+                treeTerm.addChild( dummyChild );
+                resultList.add( treeTerm );
+            }
+            return resultList;
+        }
+    }
+
+    /**
+     * Get the children of a term. Every child contains the term as parent and its own children. The
+     * hierarchy is only fetched if the children or grandchildren are not known yet.
+     *
+     * @return the children, empty for a term without children, null if they could not be fetched
+     */
+    public List<TreeTerm> getNextLevel(String termId, Fetcher fetcher) {
+        if (!hasNextLevel( getId( termId ) )) {
+            fetch( termId, 2, HierarchyDirection.DOWN, fetcher );
+        }
+
+        synchronized (this) {
+            List<TreeTerm> resultList = new ArrayList<>();
+            String id = getId( termId );
+            Node node = nodes.get( id );
+            if (node == null || !node.childrenComplete) {
+                return null;
+            }
+            for (String childId : node.children) {
+                TreeTerm treeTerm = createTreeTerm( childId );
+                // needed to determine that it's not a top-term!
+                treeTerm.addParent( createTreeTerm( id ) );
+                // needed for presentation ("plus"-sign in front of node)
+                for (String subChildId : nodes.get( childId ).children) {
+                    treeTerm.addChild( createTreeTerm( subChildId ) );
+                }
+                resultList.add( treeTerm );
+            }
+            return resultList;
+        }
+    }
+
+    /**
+     * Get a term with all its parents up to the top terms. The unknown parts of the hierarchy are
+     * fetched level by level, all terms of one level in parallel.<br/>
+     * A term which is not a top term and has no parents after it was fetched ends its path.
+     *
+     * @return the term with its parents, null if the term could not be fetched
+     */
+    public TreeTerm getPathToTop(String termId, Fetcher fetcher, SNSParallelResolver resolver) {
+        Set<String> fetched = new HashSet<>();
+        Set<String> frontier = getUnknownAncestors( getId( termId ) );
+        while (!frontier.isEmpty()) {
+            fetched.addAll( frontier );
+            if (log.isDebugEnabled()) {
+                log.debug("Fetching {} unknown ancestors of {}: {}", frontier.size(), termId, frontier);
+            }
+            List<Callable<Boolean>> tasks = new ArrayList<>( frontier.size() );
+            for (String id : frontier) {
+                tasks.add( () -> fetch( id, SNSClient.MAX_HIERARCHY_DEPTH, HierarchyDirection.UP, fetcher ) );
+            }
+            resolver.resolveAll( tasks );
+
+            // do not fetch terms again if the request failed
+            frontier = getUnknownAncestors( getId( termId ) );
+            frontier.removeAll( fetched );
+        }
+
+        synchronized (this) {
+            String id = getId( termId );
+            Node node = nodes.get( id );
+            if (node == null || !node.parentsComplete) {
+                return null;
+            }
+            TreeTerm term = createTreeTerm( id );
+            Set<String> path = new HashSet<>();
+            path.add( id );
+            addAllParents( term, path, new HashMap<>() );
+            return term;
+        }
+    }
+
+    /**
+     * Add the parents of a term recursively. A parent reached on several paths is created only once.
+     * The path guards against cycles.
+     */
+    private void addAllParents(TreeTerm term, Set<String> path, Map<String, TreeTerm> created) {
+        for (String parentId : nodes.get( term.getId() ).parents) {
+            if (path.contains( parentId )) {
+                log.warn("Cycle in hierarchy at: {}", parentId);
+                continue;
+            }
+            TreeTerm parentTerm = created.get( parentId );
+            if (parentTerm == null) {
+                parentTerm = createTreeTerm( parentId );
+                created.put( parentId, parentTerm );
+                path.add( parentId );
+                addAllParents( parentTerm, path, created );
+                path.remove( parentId );
+            }
+            parentTerm.addChild( term );
+            term.addParent( parentTerm );
+        }
+    }
+
+    /**
+     * @return the id of the term in the graph, which is the id of the term in the SNS response (see
+     *         {@link RDFUtils#getId(Resource)}) and may differ from the requested id
+     */
+    private synchronized String getId(String termId) {
+        String id = aliases.get( termId );
+        return id == null ? termId : id;
+    }
+
+    private synchronized List<String> getTopTermIds() {
+        return topTerms;
+    }
+
+    private synchronized boolean hasNextLevel(String termId) {
+        Node node = nodes.get( termId );
+        if (node == null || !node.childrenComplete) {
+            return false;
+        }
+        for (String childId : node.children) {
+            if (!nodes.get( childId ).childrenComplete) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the term itself and all its ancestors whose parents are not known yet
+     */
+    private synchronized Set<String> getUnknownAncestors(String termId) {
+        Set<String> unknown = new LinkedHashSet<>();
+        Set<String> visited = new HashSet<>();
+        List<String> level = new ArrayList<>();
+        level.add( termId );
+        while (!level.isEmpty()) {
+            List<String> nextLevel = new ArrayList<>();
+            for (String id : level) {
+                if (!visited.add( id )) {
+                    continue;
+                }
+                Node node = nodes.get( id );
+                if (node == null || !node.parentsComplete) {
+                    unknown.add( id );
+                } else {
+                    nextLevel.addAll( node.parents );
+                }
+            }
+            level = nextLevel;
+        }
+        return unknown;
+    }
+
+    /**
+     * Fetch the hierarchy of the given root and add it to the graph. If the same hierarchy is already
+     * fetched by another thread, wait for its result instead.
+     *
+     * @param root the root term, null for the top terms
+     * @return true if the hierarchy was added
+     */
+    private boolean fetch(String root, long depth, HierarchyDirection direction, Fetcher fetcher) {
+        String key = direction + " " + root;
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = inFlight.putIfAbsent( key, future );
+        if (running != null) {
+            try {
+                return running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                return false;
+            }
+        }
+
+        boolean added = false;
+        try {
+            Resource hierarchy = fetcher.fetch( root, depth, direction );
+            if (hierarchy != null) {
+                add( root, hierarchy, depth, direction );
+                added = true;
+            }
+        } finally {
+            inFlight.remove( key );
+            future.complete( added );
+        }
+        return added;
+    }
+
+    /** Add the terms and relations of a fetched hierarchy. */
+    private synchronized void add(String root, Resource hierarchy, long depth, HierarchyDirection direction) {
+        // measured inside the lock, waiting for other threads is no mapping time
+        long start = System.nanoTime();
+        ResIterator subjects = hierarchy.getModel().listSubjects();
+        while (subjects.hasNext()) {
+            Resource res = subjects.next();
+            if (!res.isURIResource()) {
+                continue;
+            }
+            Node node = getNode( res );
+
+            StmtIterator parents = RDFUtils.getParents( res );
+            while (parents.hasNext()) {
+                link( getNode( parents.next().getResource() ), node );
+                // SNS delivers all parents of a term in an upward hierarchy
+                if (direction == HierarchyDirection.UP) node.parentsComplete = true;
+            }
+            StmtIterator children = RDFUtils.getChildren( res );
+            while (children.hasNext()) {
+                link( node, getNode( children.next().getResource() ) );
+            }
+            if (RDFUtils.isTopConcept( res )) {
+                node.parentsComplete = true;
+            }
+        }
+
+        if (root == null) {
+            List<String> ids = new ArrayList<>();
+            ResIterator it = RDFUtils.getTopConceptsOf( hierarchy.getModel() );
+            while (it.hasNext()) {
+                ids.add( getNode( it.next() ).id );
+            }
+            topTerms = ids;
+        } else if (direction == HierarchyDirection.UP) {
+            // also a term without parents which is no top term, we can't get further
+            getRootNode( root, hierarchy ).parentsComplete = true;
+        } else {
+            Node node = getRootNode( root, hierarchy );
+            node.childrenComplete = true;
+            if (depth > 1) {
+                for (String childId : node.children) {
+                    nodes.get( childId ).childrenComplete = true;
+                }
+            }
+        }
+        metrics.recordTime( SNSMetrics.HIERARCHY, SNSMetrics.Phase.MAP, System.nanoTime() - start );
+    }
+
+    private Node getNode(Resource res) {
+        Node node = nodes.computeIfAbsent( RDFUtils.getId( res ), Node::new );
+        String name = RDFUtils.getName( res, langFilter );
+        if (name != null) {
+            node.name = name;
+        }
+        return node;
+    }
+
+    /** Get the node of the fetched root, remembering the requested id if it differs. */
+    private Node getRootNode(String root, Resource hierarchy) {
+        Node node = getNode( hierarchy );
+        if (!node.id.equals( root )) {
+            aliases.put( root, node.id );
+        }
+        return node;
+    }
+
+    private static void link(Node parent, Node child) {
+        parent.children.add( child.id );
+        child.parents.add( parent.id );
+    }
+
+    private TreeTerm createTreeTerm(String id) {
+        TreeTerm treeTerm = new TreeTermImpl();
+        treeTerm.setId( id );
+        treeTerm.setName( nodes.get( id ).name );
+        treeTerm.setType( Term.TermType.DESCRIPTOR );
+        return treeTerm;
+    }
+
+    /** A term of the graph, parents and children are only complete when flagged. */
+    private static class Node {
+
+        final String id;
+        String name;
+        final Collection<String> parents = new LinkedHashSet<>( 2 );
+        final Collection<String> children = new LinkedHashSet<>( 2 );
+        boolean parentsComplete;
+        boolean childrenComplete;
+
+        Node(String id) {
+            this.id = id;
+        }
+    }
+}
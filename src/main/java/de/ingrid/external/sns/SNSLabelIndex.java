@@ -0,0 +1,745 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Label search index of one language for the typeahead, answering the SNS search types
+ * "begins_with", "contains", "ends_with" and "exact" (case insensitive) without requests to SNS.<br/>
+ * The labels are kept in primitive arrays: all labels sorted in one char array for binary search of
+ * prefixes and a trigram index with delta encoded postings for infix search. The concepts are found
+ * by their id through an open addressing hash table of array positions. Added labels are first
+ * collected unsorted and merged into the arrays before the next search once there are enough of
+ * them.<br/>
+ * The index also remembers for which queries it knows ALL matching concepts (e.g. from a complete
+ * SNS result or a full vocabulary dump), see {@link #isComplete(String, String)}.
+ *
+ * @param <V> type of the concepts
+ */
+public class SNSLabelIndex<V> {
+
+    private static final int MIN_PENDING = 256;
+    private static final int SKIP_INTERVAL = 32;
+    // remembered complete queries, the least recently used ones are dropped
+    private static final int MAX_COMPLETE_QUERIES = 1000;
+
+    private final long created = System.currentTimeMillis();
+
+    // concepts, replaced concepts are kept with value null until the next merge
+    private String[] ids = new String[16];
+    private Object[] values = new Object[16];
+    private int conceptCount;
+    // hash table of the concepts by id, slot holds position + 1 in ids or 0 if free
+    private int[] idTable = new int[32];
+    private int replacedConcepts;
+
+    // merged labels in sorted order: label i is chars[offsets[i]] until chars[offsets[i + 1]]
+    private char[] chars = new char[0];
+    private int[] offsets = { 0 };
+    private int[] concepts = new int[0];
+
+    // sorted trigrams, postings of trigram i are gramSizes[i] varint encoded label deltas
+    // starting at postings[gramOffsets[i]], with a skip entry (label and offset after it) for
+    // every SKIP_INTERVAL postings starting at skipLabels[gramSkips[i]]
+    private long[] grams = new long[0];
+    private int[] gramOffsets = new int[0];
+    private int[] gramSizes = new int[0];
+    private byte[] postings = new byte[0];
+    private int[] gramSkips = new int[0];
+    private int[] skipLabels = new int[0];
+    private int[] skipOffsets = new int[0];
+
+    // labels added since the last merge
+    private String[] pendingLabels = new String[MIN_PENDING];
+    private int[] pendingConcepts = new int[MIN_PENDING];
+    private int pendingCount;
+
+    // label positions walked by the infix searches
+    private long postingsRead;
+
+    private boolean complete;
+    private final Map<String, Boolean> completeQueries = new LinkedHashMap<String, Boolean>( 16, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_COMPLETE_QUERIES;
+        }
+    };
+
+    /**
+     * Add a concept with its labels. A concept added again with the same id replaces the previous
+     * one and its labels.
+     */
+    public synchronized void add(String id, V value, Collection<String> labels) {
+        int previous = findConcept( id );
+        if (previous != -1) {
+            values[previous] = null;
+            replacedConcepts++;
+        }
+        if (conceptCount == ids.length) {
+            ids = Arrays.copyOf( ids, conceptCount * 2 );
+            values = Arrays.copyOf( values, conceptCount * 2 );
+        }
+        int concept = conceptCount++;
+        ids[concept] = id;
+        values[concept] = value;
+        if (conceptCount * 2 > idTable.length) {
+            idTable = new int[idTable.length * 2];
+            indexConcepts();
+        } else {
+            idTable[findSlot( id )] = concept + 1;
+        }
+
+        Set<String> keys = new HashSet<>();
+        for (String label : labels) {
+            String key = normalize( label );
+            if (!key.isEmpty() && keys.add( key )) {
+                if (pendingCount == pendingLabels.length) {
+                    pendingLabels = Arrays.copyOf( pendingLabels, pendingCount * 2 );
+                    pendingConcepts = Arrays.copyOf( pendingConcepts, pendingCount * 2 );
+                }
+                pendingLabels[pendingCount] = key;
+                pendingConcepts[pendingCount++] = concept;
+            }
+        }
+    }
+
+    /**
+     * @return the concept with the given id or null
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V get(String id) {
+        int concept = findConcept( id );
+        return concept == -1 ? null : (V) values[concept];
+    }
+
+    /**
+     * Search the concepts with a matching label. Exact matches come first, the others in
+     * alphabetical order of the matching label.
+     *
+     * @param queryTerm the term to search for, without wildcards
+     * @param searchType the SNS search type: "begins_with", "ends_with", "contains" or "exact"
+     * @param maxResults maximum number of returned concepts
+     * @return the matching concepts, NEVER NULL
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<V> search(String queryTerm, String searchType, int maxResults) {
+        String query = normalize( queryTerm );
+        if (query.isEmpty() || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+        if (pendingCount > Math.max( MIN_PENDING, concepts.length / 8 )) {
+            merge();
+        }
+
+        // exact matches are a range of the sorted labels
+        Set<Integer> exact = new LinkedHashSet<>();
+        int pos = lowerBound( query );
+        while (pos < concepts.length && compare( pos, query ) == 0) {
+            addMatch( exact, concepts[pos++] );
+        }
+
+        Set<Integer> others = new LinkedHashSet<>();
+        List<Match> matches = new ArrayList<>();
+        if ("begins_with".equals( searchType )) {
+            while (pos < concepts.length && startsWith( pos, query ) && others.size() < maxResults) {
+                addMatch( others, matches, pos++ );
+            }
+        } else if ("contains".equals( searchType ) || "ends_with".equals( searchType )) {
+            // candidates are the labels containing the two rarest trigrams of the query, found
+            // by walking their postings, labels shorter than a trigram are checked one by one
+            boolean endsWith = "ends_with".equals( searchType );
+            int[] rarest = getRarestTrigrams( query );
+            Postings candidates = rarest == null ? null : new Postings( rarest.length == 0 ? -1 : rarest[0] );
+            Postings filter = rarest == null || rarest.length < 2 ? null : new Postings( rarest[1] );
+            boolean more = candidates != null && candidates.next();
+            while (more && others.size() < maxResults) {
+                int label = candidates.label;
+                if (filter != null) {
+                    // leapfrog: each list skips to the position of the other
+                    if (!filter.advanceTo( label )) break;
+                    if (filter.label != label) {
+                        more = candidates.advanceTo( filter.label );
+                        continue;
+                    }
+                }
+                int length = offsets[label + 1] - offsets[label];
+                if (length != query.length() && (endsWith ? endsWith( label, query ) : contains( label, query ))) {
+                    addMatch( others, matches, label );
+                }
+                more = candidates.next();
+            }
+        }
+
+        // labels added since the last merge
+        for (int i = 0; i < pendingCount; i++) {
+            String label = pendingLabels[i];
+            int concept = pendingConcepts[i];
+            if (values[concept] == null) continue;
+            if (label.equals( query )) {
+                exact.add( concept );
+            } else if (matches( label, query, searchType )) {
+                matches.add( new Match( label, concept ) );
+            }
+        }
+        matches.sort( (a, b) -> a.label.compareTo( b.label ) );
+
+        Set<Integer> result = new LinkedHashSet<>( exact );
+        for (Match match : matches) {
+            result.add( match.concept );
+        }
+        List<V> resultList = new ArrayList<>();
+        for (Integer concept : result) {
+            if (resultList.size() == maxResults) break;
+            resultList.add( (V) values[concept] );
+        }
+        return resultList;
+    }
+
+    /**
+     * Mark that the index contains all concepts with labels in this language, e.g. when filled
+     * from a full vocabulary dump.
+     */
+    public synchronized void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    /**
+     * Remember that the index contains all concepts matching the given query, e.g. after adding
+     * an SNS search result which was not cut off. Only the last 1000 used queries are remembered.
+     */
+    public synchronized void markComplete(String searchType, String queryTerm) {
+        completeQueries.put( searchType + "|" + normalize( queryTerm ), Boolean.TRUE );
+    }
+
+    /**
+     * Determine whether the index contains all concepts matching the given query. This is the
+     * case if the index is complete or a query matching all the labels of this query was marked
+     * complete, e.g. "begins_with:was" for "begins_with:wasser" or "contains:ass" for
+     * "ends_with:wasser".
+     */
+    public synchronized boolean isComplete(String searchType, String queryTerm) {
+        if (complete) {
+            return true;
+        }
+        String query = normalize( queryTerm );
+        boolean exact = "exact".equals( searchType );
+        if (exact && isCompleteQuery( "exact|" + query )) {
+            return true;
+        }
+        for (int start = 0; start < query.length(); start++) {
+            for (int end = start + 1; end <= query.length(); end++) {
+                String part = query.substring( start, end );
+                if (isCompleteQuery( "contains|" + part )) {
+                    return true;
+                }
+                if (start == 0 && (exact || "begins_with".equals( searchType )) && isCompleteQuery( "begins_with|" + part )) {
+                    return true;
+                }
+                if (end == query.length() && (exact || "ends_with".equals( searchType )) && isCompleteQuery( "ends_with|" + part )) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Lookup with get() to mark the query as recently used. */
+    private boolean isCompleteQuery(String key) {
+        return completeQueries.get( key ) != null;
+    }
+
+    /**
+     * @return the number of labels in the index
+     */
+    public synchronized int size() {
+        return concepts.length + pendingCount;
+    }
+
+    /**
+     * @return number of label positions walked by all "contains" and "ends_with" searches so far
+     */
+    synchronized long getPostingsRead() {
+        return postingsRead;
+    }
+
+    /**
+     * @return the time in ms when the index was created
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return estimated size in bytes of the index including the ids, without the concepts
+     */
+    public synchronized long getMemoryUsage() {
+        long bytes = 2L * chars.length + 4L * offsets.length + 4L * concepts.length
+                + 8L * grams.length + 4L * gramOffsets.length + 4L * gramSizes.length + postings.length
+                + 4L * gramSkips.length + 4L * skipLabels.length + 4L * skipOffsets.length;
+        for (int i = 0; i < pendingCount; i++) {
+            // String with its char array
+            bytes += 56 + 2L * pendingLabels[i].length();
+        }
+        // references to the ids and concepts, the hash table and the id Strings
+        bytes += 8L * ids.length + 8L * values.length + 4L * idTable.length;
+        for (int i = 0; i < conceptCount; i++) {
+            bytes += 56 + 2L * ids[i].length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Merge the labels added since the last merge into the sorted arrays and rebuild the trigram
+     * index. Called automatically by {@link #search(String, String, int)}, call it after adding many
+     * labels to avoid the delay on the first search.
+     */
+    public synchronized void merge() {
+        if (pendingCount == 0 && replacedConcepts == 0) {
+            return;
+        }
+
+        // remove replaced concepts
+        int[] newIndex = new int[conceptCount];
+        int newCount = 0;
+        for (int i = 0; i < conceptCount; i++) {
+            if (values[i] == null) {
+                newIndex[i] = -1;
+            } else {
+                ids[newCount] = ids[i];
+                values[newCount] = values[i];
+                newIndex[i] = newCount++;
+            }
+        }
+        Arrays.fill( ids, newCount, conceptCount, null );
+        Arrays.fill( values, newCount, conceptCount, null );
+        conceptCount = newCount;
+        replacedConcepts = 0;
+        Arrays.fill( idTable, 0 );
+        indexConcepts();
+
+        Integer[] order = new Integer[pendingCount];
+        for (int i = 0; i < pendingCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort( order, (a, b) -> pendingLabels[a].compareTo( pendingLabels[b] ) );
+
+        // merge the sorted labels with the sorted pending labels
+        int pendingChars = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            pendingChars += pendingLabels[i].length();
+        }
+        char[] mergedChars = new char[chars.length + pendingChars];
+        int[] mergedOffsets = new int[concepts.length + pendingCount + 1];
+        int[] mergedConcepts = new int[concepts.length + pendingCount];
+        int size = 0;
+        int charPos = 0;
+        int i = 0;
+        int j = 0;
+        while (i < concepts.length || j < pendingCount) {
+            boolean takeOld = j == pendingCount || (i < concepts.length && compare( i, pendingLabels[order[j]] ) <= 0);
+            int concept;
+            if (takeOld) {
+                concept = newIndex[concepts[i]];
+                if (concept != -1) {
+                    int length = offsets[i + 1] - offsets[i];
+                    System.arraycopy( chars, offsets[i], mergedChars, charPos, length );
+                    charPos += length;
+                }
+                i++;
+            } else {
+                concept = newIndex[pendingConcepts[order[j]]];
+                if (concept != -1) {
+                    String label = pendingLabels[order[j]];
+                    label.getChars( 0, label.length(), mergedChars, charPos );
+                    charPos += label.length();
+                }
+                j++;
+            }
+            if (concept != -1) {
+                mergedConcepts[size] = concept;
+                mergedOffsets[++size] = charPos;
+            }
+        }
+        chars = Arrays.copyOf( mergedChars, charPos );
+        offsets = Arrays.copyOf( mergedOffsets, size + 1 );
+        concepts = Arrays.copyOf( mergedConcepts, size );
+
+        pendingLabels = new String[MIN_PENDING];
+        pendingConcepts = new int[MIN_PENDING];
+        pendingCount = 0;
+
+        buildTrigrams();
+    }
+
+    private void buildTrigrams() {
+        // first pass: collect the distinct trigrams in an open addressing hash table and
+        // determine the number of labels and the encoded size of the postings of every trigram
+        long[] table = new long[1024];
+        int[] tableIds = new int[1024];
+        long[] gramKeys = new long[256];
+        int[] sizes = new int[256];
+        int[] bytes = new int[256];
+        int[] lastLabel = new int[256];
+        int gramCount = 0;
+        for (int label = 0; label < concepts.length; label++) {
+            for (int pos = offsets[label]; pos + 3 <= offsets[label + 1]; pos++) {
+                long gram = trigram( chars[pos], chars[pos + 1], chars[pos + 2] );
+                int slot = findSlot( table, gram );
+                int id;
+                if (table[slot] == 0) {
+                    if (gramCount == gramKeys.length) {
+                        gramKeys = Arrays.copyOf( gramKeys, gramCount * 2 );
+                        sizes = Arrays.copyOf( sizes, gramCount * 2 );
+                        bytes = Arrays.copyOf( bytes, gramCount * 2 );
+                        lastLabel = Arrays.copyOf( lastLabel, gramCount * 2 );
+                    }
+                    id = gramCount++;
+                    table[slot] = gram;
+                    tableIds[slot] = id;
+                    gramKeys[id] = gram;
+                    lastLabel[id] = -1;
+                    if (gramCount * 2 > table.length) {
+                        long[] oldTable = table;
+                        int[] oldIds = tableIds;
+                        table = new long[oldTable.length * 2];
+                        tableIds = new int[oldTable.length * 2];
+                        for (int i = 0; i < oldTable.length; i++) {
+                            if (oldTable[i] != 0) {
+                                int newSlot = findSlot( table, oldTable[i] );
+                                table[newSlot] = oldTable[i];
+                                tableIds[newSlot] = oldIds[i];
+                            }
+                        }
+                    }
+                } else {
+                    id = tableIds[slot];
+                }
+                if (lastLabel[id] != label) {
+                    bytes[id] += varintLength( label - Math.max( lastLabel[id], 0 ) );
+                    sizes[id]++;
+                    lastLabel[id] = label;
+                }
+            }
+        }
+
+        // sort the trigrams and assign the postings ranges
+        grams = Arrays.copyOf( gramKeys, gramCount );
+        Arrays.sort( grams );
+        int[] rank = new int[gramCount];
+        gramSizes = new int[gramCount];
+        int[] gramBytes = new int[gramCount];
+        for (int id = 0; id < gramCount; id++) {
+            rank[id] = Arrays.binarySearch( grams, gramKeys[id] );
+            gramSizes[rank[id]] = sizes[id];
+            gramBytes[rank[id]] = bytes[id];
+        }
+        gramOffsets = new int[gramCount];
+        gramSkips = new int[gramCount];
+        int[] cursor = new int[gramCount];
+        int length = 0;
+        int skips = 0;
+        for (int g = 0; g < gramCount; g++) {
+            gramOffsets[g] = length;
+            cursor[g] = length;
+            length += gramBytes[g];
+            gramSkips[g] = skips;
+            skips += (gramSizes[g] - 1) / SKIP_INTERVAL;
+        }
+        skipLabels = new int[skips];
+        skipOffsets = new int[skips];
+        int[] written = new int[gramCount];
+
+        // second pass: write the delta encoded postings
+        postings = new byte[length];
+        Arrays.fill( lastLabel, -1 );
+        for (int label = 0; label < concepts.length; label++) {
+            for (int pos = offsets[label]; pos + 3 <= offsets[label + 1]; pos++) {
+                int id = tableIds[findSlot( table, trigram( chars[pos], chars[pos + 1], chars[pos + 2] ) )];
+                if (lastLabel[id] != label) {
+                    int delta = label - Math.max( lastLabel[id], 0 );
+                    lastLabel[id] = label;
+                    int g = rank[id];
+                    while ((delta & ~0x7F) != 0) {
+                        postings[cursor[g]++] = (byte) ((delta & 0x7F) | 0x80);
+                        delta >>>= 7;
+                    }
+                    postings[cursor[g]++] = (byte) delta;
+                    if (written[g] > 0 && written[g] % SKIP_INTERVAL == 0) {
+                        int skip = gramSkips[g] + written[g] / SKIP_INTERVAL - 1;
+                        skipLabels[skip] = label;
+                        skipOffsets[skip] = cursor[g];
+                    }
+                    written[g]++;
+                }
+            }
+        }
+    }
+
+    /** @return the position of the concept with the given id or -1 */
+    private int findConcept(String id) {
+        return idTable[findSlot( id )] - 1;
+    }
+
+    /** @return the slot of the id in the hash table or the free slot where to insert it */
+    private int findSlot(String id) {
+        int mask = idTable.length - 1;
+        int hash = id.hashCode() * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (idTable[slot] != 0 && !ids[idTable[slot] - 1].equals( id )) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Fill the empty hash table, a later concept with the same id replaces the former one. */
+    private void indexConcepts() {
+        for (int i = 0; i < conceptCount; i++) {
+            idTable[findSlot( ids[i] )] = i + 1;
+        }
+    }
+
+    /** @return the slot of the trigram in the hash table or the empty slot where to insert it */
+    private static int findSlot(long[] table, long gram) {
+        int mask = table.length - 1;
+        int slot = Long.hashCode( gram * 0x9E3779B97F4A7C15L ) & mask;
+        while (table[slot] != 0 && table[slot] != gram) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * @return the (at most two) trigrams of the query with the fewest labels, an empty array if
+     *         the query is shorter than a trigram or null if a trigram is not in the index
+     */
+    private int[] getRarestTrigrams(String query) {
+        int first = -1;
+        int second = -1;
+        for (int pos = 0; pos + 3 <= query.length(); pos++) {
+            int g = Arrays.binarySearch( grams, trigram( query.charAt( pos ), query.charAt( pos + 1 ), query.charAt( pos + 2 ) ) );
+            if (g < 0) {
+                return null;
+            }
+            if (g == first || g == second) {
+                continue;
+            }
+            if (first == -1 || gramSizes[g] < gramSizes[first]) {
+                second = first;
+                first = g;
+            } else if (second == -1 || gramSizes[g] < gramSizes[second]) {
+                second = g;
+            }
+        }
+        if (first == -1) return new int[0];
+        return second == -1 ? new int[] { first } : new int[] { first, second };
+    }
+
+    /** Iterates the ascending label positions of a trigram, or of all labels. */
+    private class Postings {
+
+        private final int gram;
+        private final int size;
+        private int pos;
+        private int index = -1;
+        int label = -1;
+
+        /** @param gram the trigram or -1 for all labels */
+        Postings(int gram) {
+            this.gram = gram;
+            size = gram == -1 ? concepts.length : gramSizes[gram];
+            pos = gram == -1 ? 0 : gramOffsets[gram];
+        }
+
+        boolean next() {
+            if (index + 1 == size) {
+                return false;
+            }
+            index++;
+            postingsRead++;
+            if (gram == -1) {
+                label++;
+                return true;
+            }
+            // decode the next varint delta
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = postings[pos++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            label = Math.max( label, 0 ) + delta;
+            return true;
+        }
+
+        /** Move to the first label not smaller than the given one. */
+        boolean advanceTo(int target) {
+            if (label >= target) {
+                return true;
+            }
+            if (gram == -1) {
+                index = label = Math.min( target, size ) - 1;
+            } else {
+                // jump to the last skip entry ahead of the current position before the target,
+                // skip entry j holds the posting (j + 1) * SKIP_INTERVAL
+                int base = gramSkips[gram];
+                int count = (size - 1) / SKIP_INTERVAL;
+                int found = -1;
+                for (int j = Math.max( index, 0 ) / SKIP_INTERVAL; j < count && skipLabels[base + j] < target; j++) {
+                    found = j;
+                }
+                if (found != -1) {
+                    index = (found + 1) * SKIP_INTERVAL;
+                    label = skipLabels[base + found];
+                    pos = skipOffsets[base + found];
+                }
+            }
+            while (label < target) {
+                if (!next()) return false;
+            }
+            return true;
+        }
+    }
+
+    private void addMatch(Set<Integer> matches, int concept) {
+        if (values[concept] != null) {
+            matches.add( concept );
+        }
+    }
+
+    private void addMatch(Set<Integer> matched, List<Match> matches, int label) {
+        int concept = concepts[label];
+        if (values[concept] != null && matched.add( concept )) {
+            matches.add( new Match( new String( chars, offsets[label], offsets[label + 1] - offsets[label] ), concept ) );
+        }
+    }
+
+    /** @return position of the first label which is not smaller than the given one */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = concepts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare( mid, key ) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compare(int label, String key) {
+        int start = offsets[label];
+        int length = offsets[label + 1] - start;
+        int n = Math.min( length, key.length() );
+        for (int i = 0; i < n; i++) {
+            int diff = chars[start + i] - key.charAt( i );
+            if (diff != 0) return diff;
+        }
+        return length - key.length();
+    }
+
+    private boolean startsWith(int label, String query) {
+        int start = offsets[label];
+        if (offsets[label + 1] - start < query.length()) return false;
+        for (int i = 0; i < query.length(); i++) {
+            if (chars[start + i] != query.charAt( i )) return false;
+        }
+        return true;
+    }
+
+    private boolean endsWith(int label, String query) {
+        int start = offsets[label + 1] - query.length();
+        if (start < offsets[label]) return false;
+        for (int i = 0; i < query.length(); i++) {
+            if (chars[start + i] != query.charAt( i )) return false;
+        }
+        return true;
+    }
+
+    private boolean contains(int label, String query) {
+        int last = offsets[label + 1] - query.length();
+        outer:
+        for (int start = offsets[label]; start <= last; start++) {
+            for (int i = 0; i < query.length(); i++) {
+                if (chars[start + i] != query.charAt( i )) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean matches(String label, String query, String searchType) {
+        switch (searchType) {
+            case "begins_with":
+                return label.startsWith( query );
+            case "ends_with":
+                return label.endsWith( query );
+            case "contains":
+                return label.contains( query );
+            default:
+                return label.equals( query );
+        }
+    }
+
+    private static long trigram(char c1, char c2, char c3) {
+        return ((long) c1 << 32) | ((long) c2 << 16) | c3;
+    }
+
+    static String normalize(String label) {
+        return label.trim().toLowerCase( Locale.ROOT );
+    }
+
+    private static class Match {
+
+        final String label;
+        final int concept;
+
+        Match(String label, int concept) {
+            this.label = label;
+            this.concept = concept;
+        }
+    }
+}
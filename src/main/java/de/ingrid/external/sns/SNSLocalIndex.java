@@ -0,0 +1,254 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.RiotException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * In-memory index of a SKOS dump (e.g. of the thesaurus or the gazetteer) for answering concept
+ * lookups, hierarchy walks and label searches without requests to SNS.<br/>
+ * The dump may consist of several files, e.g. a full dump and delta files. Properties of a concept
+ * stated in later files replace the ones of earlier files, see {@link SNSConcept#merge}. Only
+ * resources typed skos:Concept are indexed, e.g. not the concept scheme. {@link #refresh()} only
+ * parses the files which changed since the last load and then swaps the whole index at once, so
+ * readers never see a partial update.
+ */
+public class SNSLocalIndex {
+
+    private final static Logger log = LogManager.getLogger( SNSLocalIndex.class );
+
+    private final List<File> files;
+
+    // parsed concepts and modification time of every file, only accessed when (re)loading
+    private final Map<File, Map<String, SNSConcept>> parsedConcepts = new HashMap<>();
+    private final Map<File, Long> parsedModified = new HashMap<>();
+
+    private volatile Snapshot snapshot = new Snapshot( Collections.emptyMap() );
+
+    /**
+     * @param files the files of the dump in any format supported by Jena (determined by the file
+     *            extension), later files override properties of concepts of earlier files
+     */
+    public SNSLocalIndex(List<File> files) {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException( "No dump files given for local SKOS index" );
+        }
+        this.files = new ArrayList<>( files );
+    }
+
+    /**
+     * Parse all files changed since the last call (all files on first call) and rebuild the index.
+     *
+     * @return the number of parsed files, 0 if nothing changed
+     * @throws IOException if a file is missing or cannot be parsed, the index stays unchanged
+     */
+    public synchronized int refresh() throws IOException {
+        Map<File, Map<String, SNSConcept>> changed = new HashMap<>();
+        Map<File, Long> changedModified = new HashMap<>();
+        for (File file : files) {
+            if (!file.isFile()) {
+                throw new FileNotFoundException( "SKOS dump not found: " + file );
+            }
+            long modified = file.lastModified();
+            Long lastModified = parsedModified.get( file );
+            if (lastModified != null && lastModified == modified) {
+                continue;
+            }
+
+            long start = System.currentTimeMillis();
+            SNSConceptCollector collector = new SNSConceptCollector();
+            try {
+                RDFParser.source( file.getPath() ).parse( collector );
+            } catch (RiotException e) {
+                throw new IOException( "Error parsing SKOS dump " + file + ": " + e.getMessage(), e );
+            }
+            changed.put( file, collector.getConcepts() );
+            changedModified.put( file, modified );
+
+            if (log.isInfoEnabled()) {
+                log.info("Parsed {} concepts from {} in {} ms", collector.getConcepts().size(), file, System.currentTimeMillis() - start);
+            }
+        }
+
+        if (changed.isEmpty()) {
+            return 0;
+        }
+
+        parsedConcepts.putAll( changed );
+        parsedModified.putAll( changedModified );
+
+        Map<String, SNSConcept> concepts = new LinkedHashMap<>();
+        for (File file : files) {
+            for (SNSConcept concept : parsedConcepts.get( file ).values()) {
+                concepts.merge( concept.getUri(), concept, SNSConcept::merge );
+            }
+        }
+        concepts.values().removeIf( concept -> !concept.isSkosConcept() );
+        snapshot = new Snapshot( concepts );
+
+        return changed.size();
+    }
+
+    /**
+     * @return the number of concepts in the index
+     */
+    public int size() {
+        return snapshot.concepts.size();
+    }
+
+    /**
+     * @return the concept with the given uri or null if not in the index
+     */
+    public SNSConcept getConcept(String uri) {
+        return snapshot.concepts.get( uri );
+    }
+
+    /**
+     * @return the top concepts of the concept scheme, NEVER NULL
+     */
+    public List<SNSConcept> getTopConcepts() {
+        return snapshot.topConcepts;
+    }
+
+    /**
+     * @return the narrower concepts of the given concept, either stated by skos:narrower or by
+     *         skos:broader of the child, NEVER NULL
+     */
+    public List<SNSConcept> getChildren(String uri) {
+        Snapshot current = snapshot;
+        return current.resolve( current.children.get( uri ) );
+    }
+
+    /**
+     * @return the broader concepts of the given concept, either stated by skos:broader or by
+     *         skos:narrower of the parent, NEVER NULL
+     */
+    public List<SNSConcept> getParents(String uri) {
+        Snapshot current = snapshot;
+        return current.resolve( current.parents.get( uri ) );
+    }
+
+    /**
+     * @return the concepts related to the given concept (skos:related), NEVER NULL
+     */
+    public List<SNSConcept> getRelated(String uri) {
+        Snapshot current = snapshot;
+        SNSConcept concept = current.concepts.get( uri );
+        return concept == null ? Collections.emptyList() : current.resolve( concept.getRelated() );
+    }
+
+    /**
+     * Search concepts by their labels (prefLabel, officialName, altLabel) in the given language,
+     * see {@link SNSLabelIndex#search(String, String, int)}.
+     *
+     * @param queryTerm the term to search for, without wildcards
+     * @param searchType the SNS search type: "begins_with", "ends_with", "contains" or "exact"
+     * @param lang the language of the labels
+     * @param maxResults maximum number of returned concepts
+     * @return the matching concepts, NEVER NULL
+     */
+    public List<SNSConcept> search(String queryTerm, String searchType, String lang, int maxResults) {
+        SNSLabelIndex<SNSConcept> labels = snapshot.labels.get( lang );
+        if (labels == null) {
+            return Collections.emptyList();
+        }
+        return labels.search( queryTerm, searchType, maxResults );
+    }
+
+    /** Immutable state of the index built from the concepts of all files. */
+    private static class Snapshot {
+
+        final Map<String, SNSConcept> concepts;
+        final Map<String, List<String>> children = new HashMap<>();
+        final Map<String, List<String>> parents = new HashMap<>();
+        final List<SNSConcept> topConcepts = new ArrayList<>();
+        final Map<String, SNSLabelIndex<SNSConcept>> labels = new HashMap<>();
+
+        Snapshot(Map<String, SNSConcept> concepts) {
+            this.concepts = concepts;
+
+            for (SNSConcept concept : concepts.values()) {
+                String uri = concept.getUri();
+                if (concept.isTopConcept()) {
+                    topConcepts.add( concept );
+                }
+                for (String parent : concept.getBroader()) {
+                    link( parent, uri );
+                }
+                for (String child : concept.getNarrower()) {
+                    link( uri, child );
+                }
+
+                Set<String> langs = new HashSet<>( concept.getPrefLabels().keySet() );
+                langs.addAll( concept.getOfficialNames().keySet() );
+                langs.addAll( concept.getAltLabels().keySet() );
+                for (String lang : langs) {
+                    List<String> conceptLabels = new ArrayList<>( concept.getAltLabels( lang ) );
+                    if (concept.getOfficialNames().containsKey( lang )) conceptLabels.add( 0, concept.getOfficialNames().get( lang ) );
+                    if (concept.getPrefLabels().containsKey( lang )) conceptLabels.add( 0, concept.getPrefLabels().get( lang ) );
+                    labels.computeIfAbsent( lang, k -> new SNSLabelIndex<>() ).add( uri, concept, conceptLabels );
+                }
+            }
+            // the dump contains all concepts
+            for (SNSLabelIndex<SNSConcept> index : labels.values()) {
+                index.merge();
+                index.setComplete( true );
+            }
+        }
+
+        private void link(String parent, String child) {
+            List<String> list = children.computeIfAbsent( parent, k -> new ArrayList<>( 2 ) );
+            if (!list.contains( child )) list.add( child );
+            list = parents.computeIfAbsent( child, k -> new ArrayList<>( 1 ) );
+            if (!list.contains( parent )) list.add( parent );
+        }
+
+        /** Get the concepts of the given uris, ignoring the ones not contained in the index. */
+        List<SNSConcept> resolve(List<String> uris) {
+            if (uris == null || uris.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<SNSConcept> result = new ArrayList<>( uris.size() );
+            for (String uri : uris) {
+                SNSConcept concept = concepts.get( uri );
+                if (concept != null) result.add( concept );
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.ingrid.external.GazetteerService;
+import de.ingrid.external.GazetteerService.QueryType;
+import de.ingrid.external.ThesaurusService;
+import de.ingrid.external.om.Location;
+import de.ingrid.external.om.RelatedTerm;
+import de.ingrid.external.om.Term;
+import de.ingrid.external.om.TreeTerm;
+import de.ingrid.external.om.impl.LocationImpl;
+import de.ingrid.external.om.impl.TermImpl;
+import de.ingrid.external.om.impl.TreeTermImpl;
+
+/**
+ * Answers the thesaurus and gazetteer lookups of the {@link SNSService} from local SKOS dumps
+ * instead of SNS. The results are mapped in the same way as the results of SNS.<br/>
+ * Functions which need the SNS text analysis (similar terms, terms and locations from text) are
+ * not offered, the {@link SNSService} requests SNS for them.
+ */
+public class SNSLocalService {
+
+    private final static Logger log = LogManager.getLogger( SNSLocalService.class );
+
+    private final SNSLocalIndex thesaurus;
+    private final SNSLocalIndex gazetteer;
+    private final SNSMapper snsMapper;
+
+    /**
+     * @param thesaurus index of the thesaurus dump, pass null if terms are not served locally
+     * @param gazetteer index of the gazetteer dump, pass null if locations are not served locally
+     * @param snsMapper the mapper of the concepts
+     */
+    public SNSLocalService(SNSLocalIndex thesaurus, SNSLocalIndex gazetteer, SNSMapper snsMapper) {
+        this.thesaurus = thesaurus;
+        this.gazetteer = gazetteer;
+        this.snsMapper = snsMapper;
+    }
+
+    public boolean hasThesaurus() {
+        return thesaurus != null;
+    }
+
+    public boolean hasGazetteer() {
+        return gazetteer != null;
+    }
+
+    /**
+     * Reload the changed files of the thesaurus and gazetteer dumps.
+     *
+     * @return the number of parsed files
+     */
+    public int refresh() throws IOException {
+        int parsed = 0;
+        if (thesaurus != null) parsed += thesaurus.refresh();
+        if (gazetteer != null) parsed += gazetteer.refresh();
+        return parsed;
+    }
+
+    // ----------------------- Gazetteer -----------------------------------
+
+    public Location[] getRelatedLocationsFromLocation(String locationId, boolean includeFrom, Locale language) {
+        String langFilter = SNSService.getSNSLanguageFilter( language );
+        SNSConcept concept = getGazetteer().getConcept( locationId );
+        if (concept == null) {
+            return new Location[0];
+        }
+
+        List<Location> resultList = new ArrayList<>();
+        for (SNSConcept related : getGazetteer().getRelated( locationId )) {
+            Location loc = snsMapper.mapToLocation( related, new LocationImpl(), langFilter );
+            if (!loc.getIsExpired())
+                resultList.add( loc );
+        }
+
+        // NOTICE: includes location with passed id to the beginning!
+        if (includeFrom) {
+            Location fromLocation = snsMapper.mapToLocation( concept, new LocationImpl(), langFilter );
+            if (!fromLocation.getIsExpired())
+                resultList.add( 0, fromLocation );
+        }
+
+        return resultList.toArray( new Location[resultList.size()] );
+    }
+
+    public Location getLocation(String locationId, Locale language) {
+        SNSConcept concept = getGazetteer().getConcept( locationId );
+        if (concept == null) {
+            return null;
+        }
+        return snsMapper.mapToLocation( concept, new LocationImpl(), SNSService.getSNSLanguageFilter( language ) );
+    }
+
+    public Location[] findLocationsFromQueryTerm(String queryTerm, QueryType typeOfQuery, GazetteerService.MatchingType matching, Locale language) {
+        String searchType = SNSService.getSNSSearchType( matching, queryTerm );
+        String langFilter = SNSService.getSNSLanguageFilter( language );
+
+        List<Location> resultList = new ArrayList<>();
+        for (SNSConcept concept : getGazetteer().search( SNSService.removeWildcards( queryTerm ), searchType, langFilter, SNSClient.NUM_SEARCH_RESULTS )) {
+            Location loc = snsMapper.mapToLocation( concept, new LocationImpl(), langFilter );
+
+            // exclude administrative locations if wanted!
+            if (typeOfQuery == QueryType.ONLY_ADMINISTRATIVE_LOCATIONS && !SNSService.isAdministrativeLocation( loc ))
+                continue;
+
+            // do not add expired locations
+            if (!loc.getIsExpired())
+                resultList.add( loc );
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("findLocationsFromQueryTerm(): {} {} returns {} locations", queryTerm, searchType, resultList.size());
+        }
+
+        return resultList.toArray( new Location[resultList.size()] );
+    }
+
+    // ----------------------- Thesaurus -----------------------------------
+
+    public Term[] findTermsFromQueryTerm(String queryTerm, ThesaurusService.MatchingType matching, boolean addDescriptors, Locale language) {
+        String searchType = SNSService.getSNSSearchType( matching, queryTerm );
+        String langFilter = SNSService.getSNSLanguageFilter( language );
+
+        List<Term> resultList = new ArrayList<>();
+        for (SNSConcept concept : getThesaurus().search( SNSService.removeWildcards( queryTerm ), searchType, langFilter, SNSClient.NUM_SEARCH_RESULTS )) {
+            resultList.add( snsMapper.mapToTerm( concept, new TermImpl(), langFilter ) );
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("findTermsFromQueryTerm(): {} {} returns {} terms", queryTerm, searchType, resultList.size());
+        }
+
+        return resultList.toArray( new Term[resultList.size()] );
+    }
+
+    public TreeTerm[] getHierarchyNextLevel(String termId, Locale language) {
+        String langFilter = SNSService.getSNSLanguageFilter( language );
+        List<TreeTerm> resultList = new ArrayList<>();
+
+        if (termId == null) {
+            for (SNSConcept top : getThesaurus().getTopConcepts()) {
+                TreeTerm treeTerm = snsMapper.mapToTreeTerm( top, langFilter );
+                // mark nodes with children for presentation ("plus"-sign in front of node)
+                if (!getThesaurus().getChildren( top.getUri() ).isEmpty()) {
+                    TreeTerm dummyChild = new TreeTermImpl();
+                    dummyChild.setId( "dummy" );
+                    treeTerm.addChild( dummyChild );
+                }
+                resultList.add( treeTerm );
+            }
+        } else {
+            SNSConcept concept = getThesaurus().getConcept( termId );
+            if (concept != null) {
+                for (SNSConcept child : getThesaurus().getChildren( termId )) {
+                    TreeTerm treeTerm = snsMapper.mapToTreeTerm( child, langFilter );
+                    // needed to determine that it's not a top-term!
+                    treeTerm.addParent( snsMapper.mapToTreeTerm( concept, langFilter ) );
+                    for (SNSConcept subChild : getThesaurus().getChildren( child.getUri() )) {
+                        treeTerm.addChild( snsMapper.mapToTreeTerm( subChild, langFilter ) );
+                    }
+                    resultList.add( treeTerm );
+                }
+            }
+        }
+
+        return resultList.toArray( new TreeTerm[resultList.size()] );
+    }
+
+    public TreeTerm getHierarchyPathToTop(String termId, Locale language) {
+        SNSConcept concept = getThesaurus().getConcept( termId );
+        if (concept == null) {
+            return null;
+        }
+        String langFilter = SNSService.getSNSLanguageFilter( language );
+        TreeTerm term = snsMapper.mapToTreeTerm( concept, langFilter );
+        Set<String> path = new HashSet<>();
+        path.add( termId );
+        addAllParents( term, path, langFilter );
+        return term;
+    }
+
+    /** Add all parents up to the top terms, the path guards against cycles in the dump. */
+    private void addAllParents(TreeTerm term, Set<String> path, String langFilter) {
+        for (SNSConcept parent : getThesaurus().getParents( term.getId() )) {
+            if (!path.add( parent.getUri() )) {
+                log.warn("Cycle in hierarchy of local thesaurus at: {}", parent.getUri());
+                continue;
+            }
+            TreeTerm parentTerm = snsMapper.mapToTreeTerm( parent, langFilter );
+            parentTerm.addChild( term );
+            addAllParents( parentTerm, path, langFilter );
+            term.addParent( parentTerm );
+            path.remove( parent.getUri() );
+        }
+    }
+
+    public RelatedTerm[] getRelatedTermsFromTerm(String termId, Locale language) {
+        SNSConcept concept = getThesaurus().getConcept( termId );
+        if (concept == null) {
+            return new RelatedTerm[0];
+        }
+        List<RelatedTerm> resultList = snsMapper.mapToRelatedTerms( concept, getThesaurus().getParents( termId ),
+                getThesaurus().getChildren( termId ), getThesaurus().getRelated( termId ), SNSService.getSNSLanguageFilter( language ) );
+        return resultList.toArray( new RelatedTerm[resultList.size()] );
+    }
+
+    public Term getTerm(String termId, Locale language) {
+        SNSConcept concept = getThesaurus().getConcept( termId );
+        if (concept == null) {
+            return null;
+        }
+        return snsMapper.mapToTerm( concept, new TermImpl(), SNSService.getSNSLanguageFilter( language ) );
+    }
+
+    private SNSLocalIndex getThesaurus() {
+        if (thesaurus == null) {
+            throw new IllegalStateException( "No local thesaurus configured" );
+        }
+        return thesaurus;
+    }
+
+    private SNSLocalIndex getGazetteer() {
+        if (gazetteer == null) {
+            throw new IllegalStateException( "No local gazetteer configured" );
+        }
+        return gazetteer;
+    }
+}
@@ -66,7 +66,6 @@ public class SNSMapper {
     public enum HierarchyDirection { DOWN, UP }
 
 	private final static Logger log = LogManager.getLogger(SNSMapper.class);
-	private final static SimpleDateFormat expiredDateParser = new SimpleDateFormat("yyyy-MM-dd");
 
 	private static SNSMapper myInstance;
 
@@ -192,6 +191,65 @@ public class SNSMapper {
     	
     	// check for type name/id
     	String typeId = RDFUtils.getMemberOf(topic);
+    	setLocationType(outLocation, typeId, langFilter);
+    	
+    	// TODO: determine qualifier like "Stadt" in "<rdf:type rdf:resource="http://schema.org/City"/>" 
+    	//outLocation.setQualifier();
+    	
+    	setNativeKey(outLocation, RDFUtils.getNativeKey(topic, SNS_NATIVE_KEY_PREFIX), typeId, topic.getURI());
+    	
+    	// check for bounding box
+    	setBoundingBox(outLocation, RDFUtils.getBoundingBox(topic));
+    	
+    	if (outLocation.getQualifier() == null)
+    		outLocation.setQualifier(outLocation.getTypeName());
+    	
+    	// ALSO EXPIRED IF REQUESTED !
+    	if (checkExpired) {
+    		outLocation.setIsExpired(isExpired(topic));
+    		outLocation.setExpiredDate(RDFUtils.getExpireDate(topic));
+    	}
+    	
+    	// check if successor exists
+    	outLocation.setSuccessorIds( RDFUtils.getSuccessors(topic));
+    	
+    	return outLocation;
+    }
+
+    /** Creates a Location from the given concept (of a local SKOS index or a streamed SNS response).<br/>
+     * NOTICE: also checks whether location is expired and sets flag in Location !
+     * @param concept concept representing location
+     * @param outLocation the location the concept is mapped to, NEVER NULL 
+     * @param langFilter pass requested SNS language for mapping of title ... 
+     * @return again the outLocation after mapping, NEVER NULL
+     */
+    public Location mapToLocation(SNSConcept concept, Location outLocation, String langFilter) {
+    	outLocation.setId(concept.getId());
+    	outLocation.setName(concept.getName(langFilter));
+
+    	String typeId = concept.getMemberOf();
+    	setLocationType(outLocation, typeId, langFilter);
+    	setNativeKey(outLocation, concept.getNotation(SNS_NATIVE_KEY_PREFIX), typeId, concept.getUri());
+
+    	// prefer real bounding box instead of coordinate
+    	float[] points = null;
+    	for (String bbox : concept.getBoundingBoxes()) {
+    		points = RDFUtils.parseBoundingBox(bbox);
+    		if (points.length == 4) break;
+    	}
+    	setBoundingBox(outLocation, points);
+
+    	if (outLocation.getQualifier() == null)
+    		outLocation.setQualifier(outLocation.getTypeName());
+
+    	outLocation.setIsExpired(isExpired(concept.getExpires()));
+    	outLocation.setExpiredDate(concept.getExpires());
+    	outLocation.setSuccessorIds(concept.getSuccessors().toArray(new String[0]));
+
+    	return outLocation;
+    }
+
+    private void setLocationType(Location outLocation, String typeId, String langFilter) {
     	if (typeId != null) {
     		String id = typeId.substring(typeId.lastIndexOf('/')+1);
     		outLocation.setTypeId(id);
@@ -201,11 +259,9 @@ public class SNSMapper {
     			outLocation.setTypeName(typeName);
     		} catch (MissingResourceException e) {}
     	}
-    	
-    	// TODO: determine qualifier like "Stadt" in "<rdf:type rdf:resource="http://schema.org/City"/>" 
-    	//outLocation.setQualifier();
-    	
-    	String nativeKey = RDFUtils.getNativeKey(topic, SNS_NATIVE_KEY_PREFIX);
+    }
+
+    private void setNativeKey(Location outLocation, String nativeKey, String typeId, String uri) {
     	if ( nativeKey != null ) {
     	    outLocation.setNativeKey( nativeKey );
     	// otherwise if it's not "Gemeinde"
@@ -216,12 +272,12 @@ public class SNSMapper {
     	    outLocation.setNativeKey( key );
     	// otherwise log a warning that there was no native key for a "Gemeinde"
     	} else {
-    	    log.warn("No native key could be determined for: {}", topic.getURI());
+    	    log.warn("No native key could be determined for: {}", uri);
     	}
         // in case we didn't find a key, we use the number from the identifier
-    	
-    	// check for bounding box
-    	float[] points = RDFUtils.getBoundingBox(topic);
+    }
+
+    private void setBoundingBox(Location outLocation, float[] points) {
     	if (points != null) {
     		// if bounding box is a coordinate then use same coordinate again
     	    // FIXME: bounding box for points has wrong order (https://github.com/innoq/iqvoc_gazetteer/issues/14)
@@ -230,20 +286,6 @@ public class SNSMapper {
 	    	else if (points.length == 4)
 	    		outLocation.setBoundingBox(points[0], points[1], points[2], points[3]);
     	}
-    	
-    	if (outLocation.getQualifier() == null)
-    		outLocation.setQualifier(outLocation.getTypeName());
-    	
-    	// ALSO EXPIRED IF REQUESTED !
-    	if (checkExpired) {
-    		outLocation.setIsExpired(isExpired(topic));
-    		outLocation.setExpiredDate(RDFUtils.getExpireDate(topic));
-    	}
-    	
-    	// check if successor exists
-    	outLocation.setSuccessorIds( RDFUtils.getSuccessors(topic));
-    	
-    	return outLocation;
     }
 
     /** Creates a Term list from the given topics.<br/>
@@ -296,7 +338,31 @@ public class SNSMapper {
 
 		//outTerm.setInspireThemes(getInspireThemes(inTopic));
 
-		String gemet = RDFUtils.getGemetRef(res);
+		setGemetRef(outTerm, RDFUtils.getGemetRef(res));
+
+    	return outTerm;
+    }
+
+    /** Creates a Term from the given concept (of a local SKOS index or a streamed SNS response).<br/>
+     * @param concept concept representing a term
+     * @param outTerm the term the concept is mapped to, NEVER NULL 
+     * @param langFilter pass requested SNS language for mapping of title ... 
+     * @return again the outTerm after mapping, NEVER NULL
+     */
+    public Term mapToTerm(SNSConcept concept, Term outTerm, String langFilter) {
+		outTerm.setId(concept.getId());
+		outTerm.setName(concept.getName(langFilter));
+		// concepts without a type (e.g. in a SKOS dump) are descriptors
+		if (concept.getType() == null)
+			outTerm.setType(TermType.DESCRIPTOR);
+		else
+			outTerm.setType(getTermType(concept.getType(), concept.isTopConcept()));
+		setGemetRef(outTerm, concept.getCloseMatch());
+
+    	return outTerm;
+    }
+
+    private void setGemetRef(Term outTerm, String gemet) {
     	if (gemet != null) {
     		// if GEMET, then the title is used for the title in SNSTopic and, in case UMTHES is different
     		// the UMTHES value is stored in alternateTitle
@@ -304,8 +370,6 @@ public class SNSMapper {
     		//TODO outTerm.setName(getGemetName(inTopic));
     		outTerm.setAlternateId(getGemetId(gemet));
     	}
-
-    	return outTerm;
     }
     
     public List<Term> mapSimilarToTerms(Resource searchResults, String langFilter) {
@@ -355,6 +419,40 @@ public class SNSMapper {
     	return resultList;
     }
     
+    /** Creates a RelatedTerm list from the given concept and its resolved relations.<br/>
+     * @param concept concept the relations are determined from
+     * @param parents the broader concepts
+     * @param children the narrower concepts
+     * @param related the related concepts
+     * @param langFilter pass requested SNS language for mapping of title ... 
+     * @return the related terms NEVER NULL
+     */
+    public List<RelatedTerm> mapToRelatedTerms(SNSConcept concept,
+    		List<SNSConcept> parents,
+    		List<SNSConcept> children,
+    		List<SNSConcept> related,
+    		String langFilter) {
+    	List<RelatedTerm> resultList = new ArrayList<RelatedTerm>();
+    	resultList.addAll(mapSynonymsFromAltLabels(concept.getAltLabels(langFilter), concept.getUri()));
+    	resultList.addAll(mapConceptsToRelatedTerm(parents, langFilter, RelationType.PARENT));
+    	resultList.addAll(mapConceptsToRelatedTerm(children, langFilter, RelationType.CHILD));
+    	resultList.addAll(mapConceptsToRelatedTerm(related, langFilter, RelationType.RELATIVE));
+    	return resultList;
+    }
+
+    private List<RelatedTerm> mapConceptsToRelatedTerm(List<SNSConcept> concepts, String lang, RelationType relType) {
+    	List<RelatedTerm> result = new ArrayList<RelatedTerm>();
+    	for (SNSConcept concept : concepts) {
+    		RelatedTerm rt = new RelatedTermImpl();
+    		rt.setId(concept.getId());
+    		rt.setName(concept.getName(lang));
+    		rt.setRelationType(relType);
+    		rt.setType(TermType.DESCRIPTOR);
+    		result.add(rt);
+    	}
+    	return result;
+    }
+
     private List<RelatedTerm> mapSynonymsFromAltLabels(List<String> altLabels, String id) {
     	List<RelatedTerm> result = new ArrayList<RelatedTerm>();
     	for (String altLabel : altLabels) {
@@ -471,6 +569,19 @@ public class SNSMapper {
 		return resultList;
     }
     
+    /** Creates a TreeTerm without parents and children from the given concept.<br/>
+     * @param concept concept representing a term of the hierarchy
+     * @param langFilter pass requested SNS language for mapping of title ... 
+     * @return the tree term NEVER NULL
+     */
+    public TreeTerm mapToTreeTerm(SNSConcept concept, String langFilter) {
+    	TreeTerm treeTerm = new TreeTermImpl();
+    	treeTerm.setId(concept.getId());
+    	treeTerm.setName(concept.getName(langFilter));
+    	treeTerm.setType(Term.TermType.DESCRIPTOR);
+    	return treeTerm;
+    }
+
     private TreeTerm[] getAllParentsFrom(TreeTerm term, Resource res, String lang) {
     	List<TreeTerm> terms = new ArrayList<TreeTerm>();
     	
@@ -664,12 +775,21 @@ public class SNSMapper {
 	*/
 
     private boolean isExpired(Resource topic) {
+        return isExpired(RDFUtils.getExpireDate(topic));
+    }
+
+    /**
+     * Check whether the given expiration date (format yyyy-MM-dd) lies in the past.
+     * @param date the expiration date of a topic, may be null
+     * @return true if the date lies in the past
+     */
+    static boolean isExpired(String date) {
         Date expDate = null;
         
-        String date = RDFUtils.getExpireDate(topic);
         if (date != null) {
 	        try {
-	            expDate = expiredDateParser.parse(date);
+	            // SimpleDateFormat is not thread safe, so do not share it
+	            expDate = new SimpleDateFormat("yyyy-MM-dd").parse(date);
 	        } catch (ParseException e) {
 	            log.error("Not expected date format in sns expiredOcc.", e);
 	        }
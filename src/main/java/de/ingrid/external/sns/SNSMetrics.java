@@ -0,0 +1,87 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+/**
+ * Receives the measurements of the SNS calls, per endpoint (one of the constants of this interface).
+ * Implementations must be thread safe and fast, they are called on every request. Pass an
+ * implementation to {@link SNSService#setMetrics(SNSMetrics)} to connect a monitoring system,
+ * {@link SNSMetricsRegistry} keeps the numbers in memory.<br/>
+ * By default nothing is recorded ({@link #NOOP}).
+ */
+public interface SNSMetrics {
+
+    String FIND_TOPICS = "findTopics";
+    String GET_TERM = "getTerm";
+    String HIERARCHY = "hierarchy";
+    String AUTO_CLASSIFY = "autoClassify";
+    String FIND_EVENTS = "findEvents";
+    String SIMILAR_TERMS = "similarTerms";
+    String ANNIVERSARY = "anniversary";
+
+    /** The phases of an SNS call, measured separately. */
+    enum Phase {
+        /** sending the request and receiving the response, including the wait for a free connection */
+        NETWORK,
+        /** parsing the RDF of the response */
+        PARSE,
+        /** mapping the parsed response to terms, locations, events ... */
+        MAP
+    }
+
+    /** Records nothing. */
+    SNSMetrics NOOP = new SNSMetrics() {
+        @Override
+        public void recordTime(String endpoint, Phase phase, long nanos) {}
+
+        @Override
+        public void recordPayload(String endpoint, long bytes) {}
+
+        @Override
+        public void countError(String endpoint) {}
+
+        @Override
+        public void countTimeout(String endpoint) {}
+    };
+
+    /**
+     * Record the time of one phase of a call.
+     */
+    void recordTime(String endpoint, Phase phase, long nanos);
+
+    /**
+     * Record the size of a response body in bytes.
+     */
+    void recordPayload(String endpoint, long bytes);
+
+    /**
+     * Count a failed call: no connection, unexpected response status or unparsable response. A
+     * response "not found" (404) is no error.
+     */
+    void countError(String endpoint);
+
+    /**
+     * Count a call which timed out, waiting for a connection or for the response.
+     */
+    void countTimeout(String endpoint);
+}
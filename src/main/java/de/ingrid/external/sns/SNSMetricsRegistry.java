@@ -0,0 +1,128 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe in-memory {@link SNSMetrics}, keeping count, total and maximum of every timer and
+ * payload and the error and timeout counts per endpoint since creation.
+ */
+public class SNSMetricsRegistry implements SNSMetrics {
+
+    private final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordTime(String endpoint, Phase phase, long nanos) {
+        get( endpoint + "." + phase.name().toLowerCase() ).record( nanos );
+    }
+
+    @Override
+    public void recordPayload(String endpoint, long bytes) {
+        get( endpoint + ".payload" ).record( bytes );
+    }
+
+    @Override
+    public void countError(String endpoint) {
+        get( endpoint + ".errors" ).record( 1 );
+    }
+
+    @Override
+    public void countTimeout(String endpoint) {
+        get( endpoint + ".timeouts" ).record( 1 );
+    }
+
+    /**
+     * @return the statistics of the times of one phase of the endpoint in nanoseconds, NEVER NULL
+     */
+    public Statistics getTimer(String endpoint, Phase phase) {
+        return find( endpoint + "." + phase.name().toLowerCase() );
+    }
+
+    /**
+     * @return the statistics of the payload sizes of the endpoint in bytes, NEVER NULL
+     */
+    public Statistics getPayload(String endpoint) {
+        return find( endpoint + ".payload" );
+    }
+
+    public long getErrorCount(String endpoint) {
+        return find( endpoint + ".errors" ).getCount();
+    }
+
+    public long getTimeoutCount(String endpoint) {
+        return find( endpoint + ".timeouts" ).getCount();
+    }
+
+    /**
+     * @return all recorded statistics by name ("endpoint.network", "endpoint.payload",
+     *         "endpoint.errors" ...), sorted by name
+     */
+    public Map<String, Statistics> getAll() {
+        return new TreeMap<>( statistics );
+    }
+
+    private Statistics get(String name) {
+        return statistics.computeIfAbsent( name, k -> new Statistics() );
+    }
+
+    private Statistics find(String name) {
+        Statistics result = statistics.get( name );
+        return result != null ? result : new Statistics();
+    }
+
+    /** Count, total and maximum of the recorded values of one metric. */
+    public static class Statistics {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+            count.increment();
+            total.add( value );
+            max.accumulateAndGet( value, Math::max );
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotal() {
+            return total.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + getCount() + ", total=" + getTotal() + ", max=" + getMax();
+        }
+    }
+}
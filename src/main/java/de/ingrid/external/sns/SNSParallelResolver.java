@@ -0,0 +1,213 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ * 
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs independent SNS requests (e.g. fetching every concept of a search result) in parallel.
+ * <p>
+ * At most "parallelism" requests of one call run at the same time. Results are returned in the
+ * order of the passed tasks. If a deadline is set, the call returns when the deadline passed and
+ * the results of unfinished tasks are missing (null). A task reporting that SNS is not available
+ * (see {@link SNSService#ERROR_SNS_TIMEOUT}) fails the whole call.
+ * <p>
+ * All calls share a pool of at most "parallelism" threads. When all threads are busy (e.g. many
+ * parallel calls), the calling thread executes the tasks itself, so the number of requests to SNS
+ * stays bounded. Tasks in the background (see {@link #submit(Callable)}) are never executed by the
+ * calling thread.
+ */
+public class SNSParallelResolver {
+
+    private final static Logger log = LogManager.getLogger( SNSParallelResolver.class );
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    private final int parallelism;
+    private final long deadline;
+
+    /**
+     * @param parallelism maximum number of parallel requests of one call, 1 executes all requests sequentially
+     * @param deadline time in milliseconds after which a call returns the results available so far, 0 for no deadline
+     */
+    public SNSParallelResolver(int parallelism, long deadline) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException( "Parallelism must be at least 1" );
+        }
+        if (deadline < 0) {
+            throw new IllegalArgumentException( "Deadline can not be lower than 0" );
+        }
+        this.parallelism = parallelism;
+        this.deadline = deadline;
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread( runnable, "sns-resolver-" + threadCount.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        };
+        RejectedExecutionHandler callerRuns = new ThreadPoolExecutor.CallerRunsPolicy();
+        RejectedExecutionHandler rejected = (runnable, pool) -> {
+            if (runnable instanceof BackgroundTask) {
+                throw new RejectedExecutionException( "All resolver threads are busy" );
+            }
+            callerRuns.rejectedExecution( runnable, pool );
+        };
+        this.executor = new ThreadPoolExecutor( parallelism, parallelism, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                threadFactory, rejected );
+        this.executor.allowCoreThreadTimeOut( true );
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Execute all tasks and return their results in the same order as the tasks. A task which failed or
+     * did not finish before the deadline has a null result.
+     *
+     * @throws RuntimeException with message {@link SNSService#ERROR_SNS_TIMEOUT} if a task threw it,
+     *             the remaining tasks are not started
+     */
+    public <R> List<R> resolveAll(List<? extends Callable<R>> tasks) {
+        int size = tasks.size();
+        long end = deadline > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( deadline ) : Long.MAX_VALUE;
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>( size );
+        AtomicReference<RuntimeException> unavailable = new AtomicReference<>();
+
+        if (parallelism == 1 || size <= 1) {
+            for (int i = 0; i < size && System.nanoTime() < end; i++) {
+                results.set( i, call( tasks.get( i ) ) );
+            }
+        } else {
+            // every worker takes the next task until all are done or the deadline passed
+            AtomicInteger next = new AtomicInteger();
+            int workers = Math.min( parallelism, size );
+            CountDownLatch done = new CountDownLatch( workers );
+            List<Future<?>> futures = new ArrayList<>( workers );
+            for (int w = 0; w < workers; w++) {
+                futures.add( executor.submit( () -> {
+                    try {
+                        int i;
+                        while (System.nanoTime() < end && unavailable.get() == null && (i = next.getAndIncrement()) < size) {
+                            results.set( i, call( tasks.get( i ) ) );
+                        }
+                    } catch (RuntimeException e) {
+                        unavailable.compareAndSet( null, e );
+                    } finally {
+                        done.countDown();
+                    }
+                } ) );
+            }
+            try {
+                if (!awaitUntil( done, end )) {
+                    log.warn( "Deadline of {}ms passed, returning partial results", deadline );
+                    for (Future<?> future : futures) {
+                        future.cancel( true );
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<?> future : futures) {
+                    future.cancel( true );
+                }
+            }
+            if (unavailable.get() != null) {
+                throw unavailable.get();
+            }
+        }
+
+        List<R> resultList = new ArrayList<>( size );
+        for (int i = 0; i < size; i++) {
+            resultList.add( results.get( i ) );
+        }
+        return resultList;
+    }
+
+    /**
+     * Execute the task in the background, e.g. to request a result before it is needed.
+     *
+     * @return the result of the task or null if all threads are busy and the task was not executed
+     */
+    public <R> Future<R> submit(Callable<R> task) {
+        BackgroundTask<R> future = new BackgroundTask<>( task );
+        try {
+            executor.execute( future );
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+        return future;
+    }
+
+    private boolean awaitUntil(CountDownLatch latch, long end) throws InterruptedException {
+        if (end == Long.MAX_VALUE) {
+            latch.await();
+            return true;
+        }
+        return latch.await( end - System.nanoTime(), TimeUnit.NANOSECONDS );
+    }
+
+    /** Task submitted to run in the background, rejected instead of run by the caller when all threads are busy. */
+    private static class BackgroundTask<R> extends FutureTask<R> {
+
+        BackgroundTask(Callable<R> task) {
+            super( task );
+        }
+    }
+
+    /** @return the result or null if the task failed, except for an unavailable SNS */
+    private <R> R call(Callable<R> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            if (SNSService.ERROR_SNS_TIMEOUT.equals( e.getMessage() )) {
+                throw e;
+            }
+            log.error( "Error resolving SNS request", e );
+            return null;
+        } catch (Exception e) {
+            log.error( "Error resolving SNS request", e );
+            return null;
+        }
+    }
+}
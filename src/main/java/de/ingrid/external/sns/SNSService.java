@@ -23,21 +23,28 @@
 package de.ingrid.external.sns;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
 
 import org.apache.jena.rdf.model.NodeIterator;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
-import org.apache.jena.rdf.model.StmtIterator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -67,16 +74,48 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
     private static final String ADMINISTRATIVE_IDENTIFIER = "-admin-";
 
     // Error string for the frontend
-    private static String ERROR_SNS_TIMEOUT = "SNS_TIMEOUT";
+    static final String ERROR_SNS_TIMEOUT = "SNS_TIMEOUT";
     private static String ERROR_SNS_INVALID_URL = "SNS_INVALID_URL";
 
+    private static final int DEFAULT_CACHE_MAX_ENTRIES = 10000;
+    private static final long DEFAULT_CACHE_TIME_TO_LIVE = 3600000;
+    private static final int DEFAULT_PARALLELISM = 8;
+    private static final int DEFAULT_LABEL_INDEX_MAX_LABELS = 1000000;
+    private static final int DEFAULT_HIERARCHY_MAX_TERMS = 100000;
+    private static final int DEFAULT_EVENT_CURSOR_MAX_ENTRIES = 100;
+    private static final long DEFAULT_EVENT_CURSOR_TIME_TO_LIVE = 600000;
+
     private SNSClient snsClient;
     private SNSMapper snsMapper;
+    private SNSConceptCache conceptCache;
+    private SNSParallelResolver resolver;
+    private SNSLocalService localService;
+    private ScheduledExecutorService localRefresh;
+    private SNSStaleStore staleStore;
+    // cursors of the recent event searches, so paging does not request former SNS pages again
+    private SNSCache<String, SNSEventCursor> eventCursors;
+    private volatile SNSMetrics metrics = SNSMetrics.NOOP;
+
+    // label indexes of the search results by language for answering the typeahead locally
+    private final Map<String, SNSLabelIndex<Term>> termLabels = new ConcurrentHashMap<>();
+    private final Map<String, SNSLabelIndex<Location>> locationLabels = new ConcurrentHashMap<>();
+    private int labelIndexMaxLabels;
+    private long labelIndexTimeToLive;
+
+    // hierarchy graphs by thesaurus url and language
+    private final Map<String, SNSHierarchyGraph> hierarchyGraphs = new ConcurrentHashMap<>();
+    private int hierarchyMaxTerms;
+    private long hierarchyTimeToLive;
 
     // Init Method is called by the Spring Framework on initialization
     public void init() throws Exception {
-        ResourceBundle resourceBundle = ResourceBundle.getBundle( "sns" );
+        init( ResourceBundle.getBundle( "sns" ) );
+    }
 
+    /**
+     * Initialize the service with the settings of the given bundle (same keys as in sns.properties).
+     */
+    public void init(ResourceBundle resourceBundle) throws Exception {
         if (log.isInfoEnabled()) {
             log.info("initializing SNSService, creating SNSClient ! Thesaurus: {} Gazetteer: {} Chronicle: {}", resourceBundle.getString("sns.serviceURL.thesaurus"), resourceBundle.getString("sns.serviceURL.gazetteer"), resourceBundle.getString("sns.serviceURL.chronicle"));
         }
@@ -84,14 +123,260 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
         snsClient = new SNSClient( resourceBundle.getString( "sns.username" ), resourceBundle.getString( "sns.password" ), resourceBundle.getString( "sns.language" ),
                 new URL( resourceBundle.getString( "sns.serviceURL.thesaurus" ) ), new URL( resourceBundle.getString( "sns.serviceURL.gazetteer" ) ),
                 new URL( resourceBundle.getString( "sns.serviceURL.chronicle" ) ) );
-        snsClient.setTimeout( new Integer( resourceBundle.getString( "sns.timeout" ) ) );
+        snsClient.setTimeout( Integer.parseInt( resourceBundle.getString( "sns.timeout" ) ) );
+        snsClient.setMaxConnectionsPerHost( Integer.parseInt( getOptionalSetting( resourceBundle, "sns.maxConnectionsPerHost",
+                String.valueOf( SNSClient.DEFAULT_MAX_CONNECTIONS_PER_HOST ) ) ) );
+        snsClient.setMetrics( metrics );
+        snsClient.setRetries( Integer.parseInt( getOptionalSetting( resourceBundle, "sns.retries", String.valueOf( SNSClient.DEFAULT_RETRIES ) ) ) );
+        snsClient.setHedgeDelay( Integer.parseInt( getOptionalSetting( resourceBundle, "sns.hedgeDelay", "0" ) ) );
+        snsClient.setLatencyBudget( Integer.parseInt( getOptionalSetting( resourceBundle, "sns.latencyBudget", "0" ) ) );
+        snsClient.setCircuitBreaker(
+                Integer.parseInt( getOptionalSetting( resourceBundle, "sns.circuitBreaker.failureThreshold",
+                        String.valueOf( SNSClient.DEFAULT_FAILURE_THRESHOLD ) ) ),
+                Integer.parseInt( getOptionalSetting( resourceBundle, "sns.circuitBreaker.openTime",
+                        String.valueOf( SNSClient.DEFAULT_OPEN_TIME ) ) ) );
         snsMapper = SNSMapper.getInstance( resourceBundle );
+        long cacheTimeToLive = Long.parseLong( getOptionalSetting( resourceBundle, "sns.cache.timeToLive", String.valueOf( DEFAULT_CACHE_TIME_TO_LIVE ) ) );
+        conceptCache = new SNSConceptCache(
+                Integer.parseInt( getOptionalSetting( resourceBundle, "sns.cache.maxEntries", String.valueOf( DEFAULT_CACHE_MAX_ENTRIES ) ) ),
+                cacheTimeToLive );
+        resolver = new SNSParallelResolver(
+                Integer.parseInt( getOptionalSetting( resourceBundle, "sns.parallelism", String.valueOf( DEFAULT_PARALLELISM ) ) ),
+                Long.parseLong( getOptionalSetting( resourceBundle, "sns.requestDeadline", "0" ) ) );
+        labelIndexMaxLabels = Integer.parseInt( getOptionalSetting( resourceBundle, "sns.labelIndex.maxLabels",
+                String.valueOf( DEFAULT_LABEL_INDEX_MAX_LABELS ) ) );
+        labelIndexTimeToLive = cacheTimeToLive;
+        termLabels.clear();
+        locationLabels.clear();
+        hierarchyMaxTerms = Integer.parseInt( getOptionalSetting( resourceBundle, "sns.hierarchy.maxTerms",
+                String.valueOf( DEFAULT_HIERARCHY_MAX_TERMS ) ) );
+        hierarchyTimeToLive = cacheTimeToLive;
+        hierarchyGraphs.clear();
+        if (eventCursors != null) {
+            eventCursors.clear();
+        }
+        eventCursors = new SNSCache<>(
+                Integer.parseInt( getOptionalSetting( resourceBundle, "sns.eventCursor.maxEntries",
+                        String.valueOf( DEFAULT_EVENT_CURSOR_MAX_ENTRIES ) ) ),
+                Long.parseLong( getOptionalSetting( resourceBundle, "sns.eventCursor.timeToLive",
+                        String.valueOf( DEFAULT_EVENT_CURSOR_TIME_TO_LIVE ) ) ) );
+        // a cursor not kept anymore does not need its next page
+        eventCursors.setRemovalListener( SNSEventCursor::cancel );
+
+        if (staleStore != null) {
+            staleStore.close();
+            staleStore = null;
+        }
+        String staleStoreFile = getOptionalSetting( resourceBundle, "sns.staleStore.file", "" );
+        if (!staleStoreFile.isEmpty()) {
+            staleStore = new SNSStaleStore( new File( staleStoreFile ) );
+        }
+
+        if (localRefresh != null) {
+            localRefresh.shutdown();
+            localRefresh = null;
+        }
+        localService = null;
+        if ("local".equals( getOptionalSetting( resourceBundle, "sns.mode", "remote" ) )) {
+            localService = new SNSLocalService( createLocalIndex( resourceBundle, "sns.local.thesaurus.dump" ),
+                    createLocalIndex( resourceBundle, "sns.local.gazetteer.dump" ), snsMapper );
+            localService.refresh();
+
+            long refreshInterval = Long.parseLong( getOptionalSetting( resourceBundle, "sns.local.refreshInterval", "0" ) );
+            if (refreshInterval > 0) {
+                localRefresh = scheduleLocalRefresh( localService, refreshInterval );
+            }
+        }
+    }
+
+    /** Create the local index of the dump files in the given setting or null if not set. */
+    private static SNSLocalIndex createLocalIndex(ResourceBundle resourceBundle, String key) {
+        String dump = getOptionalSetting( resourceBundle, key, "" );
+        if (dump.isEmpty()) {
+            return null;
+        }
+        List<File> files = new ArrayList<>();
+        for (String file : dump.split( "," )) {
+            files.add( new File( file.trim() ) );
+        }
+        if (log.isInfoEnabled()) {
+            log.info("Serving {} from local SKOS dump: {}", key, files);
+        }
+        return new SNSLocalIndex( files );
+    }
+
+    private static ScheduledExecutorService scheduleLocalRefresh(SNSLocalService service, long intervalMinutes) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread thread = new Thread( r, "sns-local-refresh" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        executor.scheduleWithFixedDelay( () -> {
+            try {
+                service.refresh();
+            } catch (Exception e) {
+                log.error("Error refreshing local SKOS dump, keeping the current one", e);
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES );
+        return executor;
+    }
+
+    /**
+     * Reload the changed files of the local SKOS dumps (see "sns.mode=local").
+     *
+     * @return the number of parsed files, 0 if nothing changed or the local mode is not active
+     */
+    public int refreshLocalDumps() throws IOException {
+        return localService == null ? 0 : localService.refresh();
+    }
+
+    /**
+     * Get the label index of the search results in the given language, replaced by an empty one
+     * when full or older than the cache time to live.
+     *
+     * @return the label index or null if disabled
+     */
+    private <V> SNSLabelIndex<V> getLabelIndex(Map<String, SNSLabelIndex<V>> labelIndexes, String langFilter) {
+        if (labelIndexMaxLabels <= 0) {
+            return null;
+        }
+        SNSLabelIndex<V> labels = labelIndexes.computeIfAbsent( langFilter, k -> new SNSLabelIndex<>() );
+        if (labels.size() > labelIndexMaxLabels || System.currentTimeMillis() - labels.getCreated() > labelIndexTimeToLive) {
+            labelIndexes.replace( langFilter, labels, new SNSLabelIndex<>() );
+            labels = labelIndexes.get( langFilter );
+        }
+        return labels;
+    }
+
+    /**
+     * Add the mapped concepts of an SNS search result with the labels from the result to the label
+     * index. If the result was not cut off, the index knows all concepts matching the query.
+     */
+    private <V> void addToLabelIndex(SNSLabelIndex<V> labels, Resource searchResults, List<V> concepts, UnaryOperator<V> copy,
+            String searchType, String query, String langFilter) {
+        NodeIterator it = RDFUtils.getResults( searchResults );
+        for (int i = 0; it.hasNext() && i < concepts.size(); i++) {
+            Resource node = it.next().asResource();
+            List<String> names = new ArrayList<>( RDFUtils.getAltLabels( node, langFilter ) );
+            String name = RDFUtils.getName( node, langFilter );
+            if (name != null) names.add( 0, name );
+            labels.add( RDFUtils.getId( node ), copy.apply( concepts.get( i ) ), names );
+        }
+        if (concepts.size() < SNSClient.NUM_SEARCH_RESULTS) {
+            labels.markComplete( searchType, query );
+        }
+    }
+
+    private boolean isLocalThesaurus() {
+        return localService != null && localService.hasThesaurus();
+    }
+
+    private boolean isLocalGazetteer() {
+        return localService != null && localService.hasGazetteer();
+    }
+
+    /**
+     * @return the hit/miss statistics of the cache for fetched terms, locations and events
+     */
+    public SNSCache.Statistics getConceptCacheStatistics() {
+        return conceptCache.getStatistics();
+    }
+
+    /**
+     * Set the metrics the network, parse and map time, payload size, errors and timeouts of the SNS
+     * calls are recorded to, per endpoint (see the constants of {@link SNSMetrics}). Can be set before
+     * or after {@link #init(ResourceBundle)}.
+     *
+     * @param metrics the metrics, e.g. a {@link SNSMetricsRegistry} or an adapter to a monitoring
+     *            system, pass {@link SNSMetrics#NOOP} to record nothing
+     */
+    public void setMetrics(SNSMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException( "Metrics can not be null, use SNSMetrics.NOOP" );
+        }
+        this.metrics = metrics;
+        if (snsClient != null) {
+            snsClient.setMetrics( metrics );
+        }
+    }
+
+    public SNSMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Map a parsed SNS response and record the time as map phase of the endpoint. */
+    private <T> T map(String endpoint, Supplier<T> mapping) {
+        long start = System.nanoTime();
+        try {
+            return mapping.get();
+        } finally {
+            metrics.recordTime( endpoint, SNSMetrics.Phase.MAP, System.nanoTime() - start );
+        }
+    }
+
+    /**
+     * Store a successfully mapped result, to serve it while the SNS service is not available.
+     */
+    private <T> void putStale(String key, SNSStaleStore.Codec<T> codec, List<T> values) {
+        if (staleStore != null) {
+            try {
+                staleStore.put( key, codec, values );
+            } catch (IOException e) {
+                log.error( "Error writing to stale store", e );
+            }
+        }
+    }
+
+    /**
+     * Get the stored result of a request which failed because the SNS service is not available.
+     *
+     * @throws RuntimeException with message {@link #ERROR_SNS_TIMEOUT} if no result is stored, so
+     *             the frontend can tell the outage from an empty result
+     */
+    private <T> List<T> getStale(String key, SNSStaleStore.Codec<T> codec) {
+        List<T> values = null;
+        if (staleStore != null) {
+            try {
+                values = staleStore.get( key, codec );
+            } catch (IOException e) {
+                log.error( "Error reading from stale store", e );
+            }
+        }
+        if (values == null) {
+            throw new RuntimeException( ERROR_SNS_TIMEOUT );
+        }
+        if (log.isInfoEnabled()) {
+            log.info("SNS not available, serving stale result: {}", key);
+        }
+        return values;
+    }
+
+    /**
+     * @throws RuntimeException with message {@link #ERROR_SNS_TIMEOUT} if the service with the given
+     *             url is not available
+     */
+    private void checkAvailable(String url) {
+        if (!snsClient.isAvailable( url )) {
+            throw new RuntimeException( ERROR_SNS_TIMEOUT );
+        }
+    }
+
+    /** Get a setting which may be missing in older sns.properties files. */
+    private static String getOptionalSetting(ResourceBundle resourceBundle, String key, String defaultValue) {
+        if (resourceBundle.containsKey( key )) {
+            return resourceBundle.getString( key ).trim();
+        }
+        return defaultValue;
     }
 
     // ----------------------- GazetteerService -----------------------------------
 
     @Override
     public Location[] getRelatedLocationsFromLocation(String locationId, boolean includeFrom, Locale language) {
+        if (isLocalGazetteer()) {
+            return localService.getRelatedLocationsFromLocation( locationId, includeFrom, language );
+        }
+
         String langFilter = getSNSLanguageFilter( language );
         String excludedTerms = "";
 
@@ -101,20 +386,28 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
         // no language in SNS for getPSI !!!
         // NOTICE: includes location with passed id at FIRST position !
-        Resource topic = snsClient.getTerm( locationId, langFilter, FilterType.ONLY_LOCATIONS );
-        if (topic != null) {
+        Map<String, SNSConcept> concepts = snsClient.getTermConcepts( locationId, langFilter, FilterType.ONLY_LOCATIONS );
+        String staleKey = "relatedLocations|" + snsClient.getUrlByFilter( FilterType.ONLY_LOCATIONS ) + "|" + langFilter + "|" + includeFrom + "|" + locationId;
+        if (concepts == null && !snsClient.isAvailable( FilterType.ONLY_LOCATIONS )) {
+            List<Location> resultList = getStale( staleKey, SNSStaleStore.LOCATIONS );
+            return resultList.toArray( new Location[resultList.size()] );
+        }
+        if (concepts != null) {
             // iterate over all related locations fetched exclusively to get all information about
             // type and expiration date
-            // List<Location> resultList = snsMapper.mapToLocationsFromLocation(location, checkExpired, langFilter);
             List<Location> resultList = new ArrayList<>();
 
-            StmtIterator it = RDFUtils.getRelatedConcepts( topic );
-            while (it.hasNext()) {
-                Resource nodeRes = it.next().getResource();
-                // we expect all necessary data to be inside the result
-                // otherwise we have to query all terms separately, which takes too long
-                // Resource locationRes = snsClient.getTerm(RDFUtils.getId(nodeRes), langFilter, FilterType.ONLY_LOCATIONS);
-                Location loc = snsMapper.mapToLocation( nodeRes, new LocationImpl(), langFilter );
+            SNSConcept topic = getConcept( concepts, locationId );
+            // we expect all necessary data to be inside the result
+            // otherwise we have to query all terms separately, which takes too long
+            List<Location> relatedLocations = map( SNSMetrics.GET_TERM, () -> {
+                List<Location> mapped = new ArrayList<>();
+                for (SNSConcept related : getConcepts( concepts, topic.getRelated() )) {
+                    mapped.add( snsMapper.mapToLocation( related, new LocationImpl(), langFilter ) );
+                }
+                return mapped;
+            } );
+            for (Location loc : relatedLocations) {
                 if (!loc.getIsExpired())
                     resultList.add( loc );
                 else
@@ -123,7 +416,7 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
             // NOTICE: includes location with passed id to the beginning!
             if (includeFrom) {
-                Location fromLocation = snsMapper.mapToLocation( topic, new LocationImpl(), langFilter );
+                Location fromLocation = map( SNSMetrics.GET_TERM, () -> snsMapper.mapToLocation( topic, new LocationImpl(), langFilter ) );
                 if (!fromLocation.getIsExpired())
                     resultList.add( 0, fromLocation );
             }
@@ -132,6 +425,7 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
                 int excludedLength = excludedTerms.isEmpty() ? 0 : excludedTerms.split( "," ).length;
                 log.debug("return locations.size: {} (excluded: {} => {})", resultList.size(), excludedLength, excludedTerms);
             }
+            putStale( staleKey, SNSStaleStore.LOCATIONS, resultList );
 
             return resultList.toArray( new Location[resultList.size()] );
         }
@@ -140,6 +434,10 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
     @Override
     public Location getLocation(String locationId, Locale language) {
+        if (isLocalGazetteer()) {
+            return localService.getLocation( locationId, language );
+        }
+
         Location result = null;
         String langFilter = getSNSLanguageFilter( language );
 
@@ -148,10 +446,7 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
         }
 
         // no language in SNS for getPSI !!!
-        Resource location = snsClient.getTerm( locationId, langFilter, FilterType.ONLY_LOCATIONS );
-        if (location != null) {
-            result = snsMapper.mapToLocation( location, new LocationImpl(), langFilter );
-        }
+        result = fetchLocation( locationId, langFilter );
 
         if (log.isDebugEnabled()) {
             log.debug("return: {}", result);
@@ -174,18 +469,23 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
         // boolean checkExpired = true;
         if (res[1] != null) {
+            // fetch all locations in parallel
+            List<Callable<Location>> tasks = new ArrayList<>();
             NodeIterator it = RDFUtils.getResults( res[1] );
             while (it.hasNext()) {
-                RDFNode node = it.next();
-                Resource locationRes = snsClient.getTerm( RDFUtils.getId( node.asResource() ), langFilter, type );
-                if (locationRes == null)
+                String locationId = RDFUtils.getId( it.next().asResource() );
+                tasks.add( () -> fetchLocation( locationId, langFilter ) );
+            }
+            for (Location loc : resolver.resolveAll( tasks )) {
+                if (loc == null)
                     continue;
-                Location loc = snsMapper.mapToLocation( locationRes, new LocationImpl(), langFilter );
 
                 // do not add expired locations
                 if (!loc.getIsExpired())
                     resultList.add( loc );
             }
+        } else {
+            checkAvailable( snsClient.getUrlByFilter( type ) );
         }
 
         if (log.isDebugEnabled()) {
@@ -197,6 +497,10 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
     @Override
     public Location[] findLocationsFromQueryTerm(String queryTerm, QueryType typeOfQuery, de.ingrid.external.GazetteerService.MatchingType matching, Locale language) {
+        if (isLocalGazetteer()) {
+            return localService.findLocationsFromQueryTerm( queryTerm, typeOfQuery, matching, language );
+        }
+
         FilterType type = FilterType.ONLY_LOCATIONS;
         List<Location> resultList = new ArrayList<>();
         String searchType = getSNSSearchType( matching, queryTerm );
@@ -208,16 +512,43 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
             log.debug("findLocationsFromQueryTerm(): {} {} {} {}", queryTerm, FilterType.ONLY_LOCATIONS, searchType, langFilter);
         }
 
-        Resource topics = snsFindTopics( null, queryTerm, type, searchType, addDescriptors, langFilter );
-        if (topics == null)
-            return new Location[0];
-
-        NodeIterator it = RDFUtils.getResults( topics );
-        while (it.hasNext()) {
-            RDFNode node = it.next();
-            // if (locationRes == null) continue;
-            Location loc = snsMapper.mapToLocation( node.asResource(), new LocationImpl(), langFilter );
+        List<Location> locations;
+        SNSLabelIndex<Location> labels = getLabelIndex( locationLabels, langFilter );
+        if (labels != null && labels.isComplete( searchType, queryTerm )) {
+            // all matching locations were already delivered by SNS, ordered like the term search
+            locations = new ArrayList<>();
+            for (Location loc : labels.search( queryTerm, searchType, SNSClient.NUM_SEARCH_RESULTS )) {
+                // the location may have expired since it was indexed
+                locations.add( SNSConceptCache.copyCurrent( loc ) );
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("found locations in label index: {}", locations.size());
+            }
+        } else {
+            String staleKey = "findLocations|" + snsClient.getUrlByFilter( type ) + "|" + langFilter + "|" + searchType + "|" + queryTerm;
+            Resource topics = snsFindTopics( null, queryTerm, type, searchType, addDescriptors, langFilter );
+            if (topics == null && !snsClient.isAvailable( type )) {
+                locations = getStale( staleKey, SNSStaleStore.LOCATIONS );
+            } else if (topics == null) {
+                return new Location[0];
+            } else {
+                locations = map( SNSMetrics.FIND_TOPICS, () -> {
+                    List<Location> mapped = new ArrayList<>();
+                    NodeIterator it = RDFUtils.getResults( topics );
+                    while (it.hasNext()) {
+                        RDFNode node = it.next();
+                        mapped.add( snsMapper.mapToLocation( node.asResource(), new LocationImpl(), langFilter ) );
+                    }
+                    return mapped;
+                } );
+                putStale( staleKey, SNSStaleStore.LOCATIONS, locations );
+                if (labels != null) {
+                    addToLabelIndex( labels, topics, locations, SNSConceptCache::copy, searchType, queryTerm, langFilter );
+                }
+            }
+        }
 
+        for (Location loc : locations) {
             // exclude administrative locations if wanted!
             if (typeOfQuery == QueryType.ONLY_ADMINISTRATIVE_LOCATIONS && !isAdministrativeLocation( loc ))
                 continue;
@@ -234,13 +565,13 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
         return resultList.toArray( new Location[resultList.size()] );
     }
 
-    private String removeWildcards(String queryTerm) {
+    static String removeWildcards(String queryTerm) {
         return queryTerm.replaceAll( "\\*", "" );
     }
 
     // ----------------------- ThesaurusService -----------------------------------
 
-    private boolean isAdministrativeLocation(Location loc) {
+    static boolean isAdministrativeLocation(Location loc) {
         return loc.getTypeId() != null && loc.getTypeId().contains( ADMINISTRATIVE_IDENTIFIER );
     }
 
@@ -251,6 +582,11 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
     @Override
     public Term[] findTermsFromQueryTerm(String url, String queryTerm, de.ingrid.external.ThesaurusService.MatchingType matching, boolean addDescriptors, Locale language) {
+        // other thesauri are always requested remotely
+        if (url == null && isLocalThesaurus()) {
+            return localService.findTermsFromQueryTerm( queryTerm, matching, addDescriptors, language );
+        }
+
         String searchType = getSNSSearchType( matching, queryTerm );
         String langFilter = getSNSLanguageFilter( language );
 
@@ -258,11 +594,41 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
             log.debug("findTermsFromQueryTerm(): {} {} {}", queryTerm, searchType, langFilter);
         }
 
-        Resource res = snsFindTopics( url, queryTerm, FilterType.ONLY_TERMS, searchType, addDescriptors, langFilter );
-        List<Term> resultList = snsMapper.mapToTerms( res, null, langFilter );
+        // only the default thesaurus is indexed, the wildcards only determine the search type so
+        // SNS and the index get the same query (like the location search)
+        String query = removeWildcards( queryTerm );
+        SNSLabelIndex<Term> labels = url == null ? getLabelIndex( termLabels, langFilter ) : null;
+        if (labels != null && labels.isComplete( searchType, query )) {
+            // all matching terms were already delivered by SNS, but they are ordered by the index
+            // (exact matches first, then alphabetical) and not in the order of the SNS response
+            List<Term> resultList = new ArrayList<>();
+            for (Term term : labels.search( query, searchType, SNSClient.NUM_SEARCH_RESULTS )) {
+                resultList.add( SNSConceptCache.copy( term ) );
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("return terms from label index, size: {}", resultList.size());
+            }
+            return resultList.toArray( new Term[resultList.size()] );
+        }
+
+        String serviceUrl = url == null ? snsClient.getUrlByFilter( FilterType.ONLY_TERMS ) : HtmlUtils.prepareUrl( url );
+        String staleKey = "findTerms|" + serviceUrl + "|" + langFilter + "|" + searchType + "|" + addDescriptors + "|" + query;
+        Resource res = snsFindTopics( url, query, FilterType.ONLY_TERMS, searchType, addDescriptors, langFilter );
+        List<Term> resultList;
+        if (res == null && !snsClient.isAvailable( serviceUrl )) {
+            resultList = getStale( staleKey, SNSStaleStore.TERMS );
+        } else {
+            resultList = map( SNSMetrics.FIND_TOPICS, () -> snsMapper.mapToTerms( res, null, langFilter ) );
+            if (res != null) {
+                putStale( staleKey, SNSStaleStore.TERMS, resultList );
+            }
+            if (labels != null && res != null) {
+                addToLabelIndex( labels, res, resultList, SNSConceptCache::copy, searchType, query, langFilter );
+            }
+        }
 
         if (log.isDebugEnabled()) {
-            log.debug("return locations.size: {}", resultList.size());
+            log.debug("return terms.size: {}", resultList.size());
         }
 
         return resultList.toArray( new Term[resultList.size()] );
@@ -275,35 +641,33 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
     @Override
     public TreeTerm[] getHierarchyNextLevel(String url, String termId, Locale language) {
-        long depth = 2;
-        HierarchyDirection direction = HierarchyDirection.DOWN;
-        boolean includeSiblings = false;
-        String langFilter = getSNSLanguageFilter( language );
-        // if top terms wanted adapt parameters
-        if (termId == null) {
-            // depth 1 is enough, fetches children of top terms
-            // BUT we use 0 to speed up the process and assume that every root node has
-            // at least one child
-            depth = 0;
+        if (url == null && isLocalThesaurus()) {
+            return localService.getHierarchyNextLevel( termId, language );
         }
 
+        String langFilter = getSNSLanguageFilter( language );
+
         if (log.isDebugEnabled()) {
             log.debug("getHierarchyNextLevel(): {} {}", termId, langFilter);
         }
 
-        Resource mapFragment = snsGetHierarchy( url, termId, depth, direction, includeSiblings, langFilter );
-
-        List<TreeTerm> resultList = new ArrayList<>();
-        if (mapFragment != null) {
-            // we also need language for additional filtering ! SNS delivers wrong results !
-            if (termId == null)
-                resultList = snsMapper.mapRootToTreeTerms( termId, direction, mapFragment, langFilter );
-            else
-                resultList = snsMapper.mapToTreeTerms( termId, direction, mapFragment, langFilter );
+        SNSHierarchyGraph graph = getHierarchyGraph( url, langFilter );
+        SNSHierarchyGraph.Fetcher fetcher = (root, depth, direction) -> snsGetHierarchy( url, root, depth, direction, false, langFilter );
+        List<TreeTerm> resultList;
+        if (termId == null) {
+            // top terms are fetched once and then served from the graph
+            resultList = graph.getTopTerms( fetcher );
+        } else {
+            resultList = graph.getNextLevel( termId, fetcher );
+        }
+        if (resultList == null) {
+            // not known and not fetched, a known term without children is no outage
+            checkAvailable( url == null ? snsClient.getUrlByFilter( FilterType.ONLY_TERMS ) : url );
+            resultList = new ArrayList<>();
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("return terms.size: {}", resultList.size());
-            }
+        if (log.isDebugEnabled()) {
+            log.debug("return terms.size: {}", resultList.size());
         }
         return resultList.toArray( new TreeTerm[resultList.size()] );
     }
@@ -315,55 +679,42 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
     @Override
     public TreeTerm getHierarchyPathToTop(String url, String termId, Locale language) {
-        long depth = SNSClient.MAX_HIERARCHY_DEPTH; // fetch maximum available
-        HierarchyDirection direction = HierarchyDirection.UP;
-        boolean includeSiblings = false;
+        if (url == null && isLocalThesaurus()) {
+            return localService.getHierarchyPathToTop( termId, language );
+        }
+
         String langFilter = getSNSLanguageFilter( language );
 
         if (log.isDebugEnabled()) {
             log.debug("getHierarchyPathToTop(): {} {}", termId, langFilter);
         }
 
-        Resource hierarchy = snsGetHierarchy( url, termId, depth, direction, includeSiblings, langFilter );
-
-        if (hierarchy == null)
-            return null;
-
-        List<TreeTerm> resultList = snsMapper.mapToTreeTerms( termId, direction, hierarchy, langFilter );
-
-        // get unresolved parents due to too short hierarchy
-        // in case the analyzed node has no direct parents we stop here
-        // because we cannot determine the correct top level node!
-        if (resultList.get( 0 ).getParents() != null) {
-            checkForNonRootElements( resultList, hierarchy, url, language );
+        // only the parts of the hierarchy not known yet are fetched, the maximum available depth at once
+        TreeTerm startTerm = getHierarchyGraph( url, langFilter ).getPathToTop( termId,
+                (root, depth, direction) -> snsGetHierarchy( url, root, depth, direction, false, langFilter ), resolver );
+        if (startTerm == null) {
+            checkAvailable( url == null ? snsClient.getUrlByFilter( FilterType.ONLY_TERMS ) : url );
         }
 
         if (log.isDebugEnabled()) {
-            log.debug("return startTerm: {}", resultList.get(0));
+            log.debug("return startTerm: {}", startTerm);
         }
 
-        return resultList.get( 0 );
+        return startTerm;
     }
 
     /**
-     * This method checks all parent elements who have no further parent element if they are top elements. If not then the hierarchy is
-     * fetched from the last parent and the getHierarchyPathToTop is called.
+     * Get the hierarchy graph of the thesaurus with the given url in the given language, replaced by
+     * an empty one when full or older than the cache time to live.
      */
-    private void checkForNonRootElements(List<TreeTerm> resultList, Resource hierarchy, String url, Locale language) {
-        for (TreeTerm treeTerm : resultList) {
-            Resource parentRes = hierarchy.getModel().getResource( treeTerm.getId() );
-            if (treeTerm.getParents() != null) {
-                checkForNonRootElements( treeTerm.getParents(), hierarchy, url, language );
-            } else if (treeTerm.getParents() == null && !RDFUtils.isTopConcept( parentRes )) {
-                List<TreeTerm> parents = getHierarchyPathToTop( url, treeTerm.getId(), language ).getParents();
-                if (parents != null) {
-                    for (TreeTerm parent : parents) {
-                        treeTerm.addParent( parent );
-                    }
-                }
-            }
+    private SNSHierarchyGraph getHierarchyGraph(String url, String langFilter) {
+        String key = (url == null ? "" : url) + "|" + langFilter;
+        SNSHierarchyGraph graph = hierarchyGraphs.computeIfAbsent( key, k -> new SNSHierarchyGraph( langFilter, metrics ) );
+        if (graph.size() > hierarchyMaxTerms || System.currentTimeMillis() - graph.getCreated() > hierarchyTimeToLive) {
+            hierarchyGraphs.replace( key, graph, new SNSHierarchyGraph( langFilter, metrics ) );
+            graph = hierarchyGraphs.get( key );
         }
-
+        return graph;
     }
 
     @Override
@@ -376,7 +727,10 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
         // Resource topics = snsGetSimilarTerms(names, ignoreCase, langFilter);
         Resource resSimilarTerms = snsClient.getSimilarTerms( ignoreCase, names, langFilter );
-        List<Term> resultList = snsMapper.mapSimilarToTerms( resSimilarTerms, langFilter );
+        if (resSimilarTerms == null) {
+            checkAvailable( snsClient.getUrlByFilter( FilterType.ONLY_TERMS ) );
+        }
+        List<Term> resultList = map( SNSMetrics.SIMILAR_TERMS, () -> snsMapper.mapSimilarToTerms( resSimilarTerms, langFilter ) );
 
         if (log.isDebugEnabled()) {
             log.debug("return terms.size: {}", resultList.size());
@@ -387,17 +741,33 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
     @Override
     public RelatedTerm[] getRelatedTermsFromTerm(String termId, Locale language) {
+        if (isLocalThesaurus()) {
+            return localService.getRelatedTermsFromTerm( termId, language );
+        }
+
         String langFilter = getSNSLanguageFilter( language );
 
         if (log.isDebugEnabled()) {
             log.debug("getRelatedTermsFromTerm(): {} {}", termId, langFilter);
         }
 
-        Resource term = snsClient.getTerm( termId, langFilter, FilterType.ONLY_TERMS );
-
-        if (term != null) {
-            List<RelatedTerm> resultList = snsMapper.mapToRelatedTerms( termId, term, langFilter );
+        String serviceUrl = snsClient.getUrlByFilter( FilterType.ONLY_TERMS );
+        List<RelatedTerm> resultList = conceptCache.getRelatedTerms( serviceUrl, termId, langFilter );
+        if (resultList == null) {
+            String staleKey = "relatedTerms|" + serviceUrl + "|" + langFilter + "|" + termId;
+            Map<String, SNSConcept> concepts = snsClient.getTermConcepts( termId, langFilter, FilterType.ONLY_TERMS );
+            if (concepts != null) {
+                SNSConcept term = getConcept( concepts, termId );
+                resultList = map( SNSMetrics.GET_TERM, () -> snsMapper.mapToRelatedTerms( term, getConcepts( concepts, term.getBroader() ),
+                        getConcepts( concepts, term.getNarrower() ), getConcepts( concepts, term.getRelated() ), langFilter ) );
+                conceptCache.putRelatedTerms( serviceUrl, termId, langFilter, resultList );
+                putStale( staleKey, SNSStaleStore.RELATED_TERMS, resultList );
+            } else if (!snsClient.isAvailable( serviceUrl )) {
+                resultList = getStale( staleKey, SNSStaleStore.RELATED_TERMS );
+            }
+        }
 
+        if (resultList != null) {
             if (log.isDebugEnabled()) {
                 log.debug("return terms.size: {}", resultList.size());
             }
@@ -410,6 +780,10 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
     @Override
     public Term getTerm(String termId, Locale language) {
+        if (isLocalThesaurus()) {
+            return localService.getTerm( termId, language );
+        }
+
         String langFilter = getSNSLanguageFilter( language );
 
         if (log.isDebugEnabled()) {
@@ -417,15 +791,10 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
         }
 
         // no language in SNS for getPSI !!!
-        Term topic = null;
-        Resource term = snsClient.getTerm( termId, langFilter, FilterType.ONLY_TERMS );
-
-        if (term != null) {
-            topic = snsMapper.mapToTerm( term, new TermImpl(), langFilter );
+        Term topic = fetchTerm( termId, langFilter );
 
-            if (log.isDebugEnabled()) {
-                log.debug("return term: {}", topic);
-            }
+        if (topic != null && log.isDebugEnabled()) {
+            log.debug("return term: {}", topic);
         }
 
         return topic;
@@ -440,8 +809,11 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
         }
 
         Resource[] res = snsAutoClassifyText( text, analyzeMaxWords, FilterType.ONLY_TERMS, ignoreCase, langFilter );
+        if (res[0] == null) {
+            checkAvailable( snsClient.getUrlByFilter( FilterType.ONLY_TERMS ) );
+        }
 
-        List<Term> resultList = snsMapper.mapToTerms( res[0], TermType.DESCRIPTOR, langFilter );
+        List<Term> resultList = map( SNSMetrics.AUTO_CLASSIFY, () -> snsMapper.mapToTerms( res[0], TermType.DESCRIPTOR, langFilter ) );
 
         if (log.isDebugEnabled()) {
             log.debug("return terms.size: {}", resultList.size());
@@ -461,6 +833,15 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
         }
 
         Resource[] resources = snsAutoClassifyURL( url, filter, langFilter );
+        if (resources[0] == null && resources[1] == null && resources[2] == null) {
+            // no service could classify the document
+            for (FilterType type : new FilterType[] { FilterType.ONLY_TERMS, FilterType.ONLY_LOCATIONS, FilterType.ONLY_EVENTS }) {
+                if (filter == null || filter == type) {
+                    checkAvailable( snsClient.getUrlByFilter( type ) );
+                }
+            }
+            throw new RuntimeException( ERROR_SNS_INVALID_URL );
+        }
         FullClassifyResult result = convertResourcesToFullClassifyResult( resources, langFilter );
         result.setIndexedDocument( snsMapper.mapToIndexedDocument( getHtmlContent( url ), url ) );
 
@@ -483,6 +864,14 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
         }
 
         Resource[] resources = snsAutoClassifyText( text, analyzeMaxWords, filter, ignoreCase, langFilter );
+        if (resources[0] == null && resources[1] == null && resources[2] == null) {
+            // no service could classify the text
+            for (FilterType type : new FilterType[] { FilterType.ONLY_TERMS, FilterType.ONLY_LOCATIONS, FilterType.ONLY_EVENTS }) {
+                if (filter == null || filter == type) {
+                    checkAvailable( snsClient.getUrlByFilter( type ) );
+                }
+            }
+        }
         FullClassifyResult result = convertResourcesToFullClassifyResult( resources, langFilter );
 
         if (log.isDebugEnabled()) {
@@ -501,31 +890,33 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
         List<Term> terms = new ArrayList<>();
         List<Location> locations = new ArrayList<>();
         List<Event> events = new ArrayList<>();
+
+        // fetch the concepts of all results in parallel, the results keep the order of the tasks
+        List<Callable<Object>> tasks = new ArrayList<>();
         for (int i = 0; i < resources.length; i++) {
             Resource resource = resources[i];
             if (resource != null) {
-                FilterType type = null;
-                if (i == 0)
-                    type = FilterType.ONLY_TERMS;
-                else if (i == 1)
-                    type = FilterType.ONLY_LOCATIONS;
-                else if (i == 2)
-                    type = FilterType.ONLY_EVENTS;
                 NodeIterator it = RDFUtils.getResults( resource );
                 while (it.hasNext()) {
                     RDFNode node = it.next();
-                    Resource locationRes = snsClient.getTerm( RDFUtils.getId( node.asResource() ), langFilter, type );
-                    if (locationRes == null)
-                        continue;
+                    String id = RDFUtils.getId( node.asResource() );
                     if (i == 0)
-                        terms.add( snsMapper.mapToTerm( locationRes, new TermImpl(), langFilter ) );
+                        tasks.add( () -> fetchTerm( id, langFilter ) );
                     else if (i == 1)
-                        locations.add( snsMapper.mapToLocation( locationRes, new LocationImpl(), langFilter ) );
+                        tasks.add( () -> fetchLocation( id, langFilter ) );
                     else if (i == 2)
-                        events.add( snsMapper.mapToEvent( locationRes, langFilter ) );
+                        tasks.add( () -> fetchEvent( id, langFilter ) );
                 }
             }
         }
+        for (Object concept : resolver.resolveAll( tasks )) {
+            if (concept instanceof Term)
+                terms.add( (Term) concept );
+            else if (concept instanceof Location)
+                locations.add( (Location) concept );
+            else if (concept instanceof Event)
+                events.add( (Event) concept );
+        }
         FullClassifyResultImpl result = new FullClassifyResultImpl();
         result.setLocations( locations );
         result.setTerms( terms );
@@ -552,22 +943,26 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
         return mapFragment;
     }
 
-    /** Call SNS autoClassify. Map passed params to according SNS params. */
+    /** Call SNS autoClassify. Map passed params to according SNS params. The services are called in parallel. */
     private Resource[] snsAutoClassifyText(String text, int analyzeMaxWords, FilterType filter, boolean ignoreCase, String langFilter) {
-        Resource[] resources = new Resource[3];
-        try {
-            if (filter == null || filter == FilterType.ONLY_TERMS)
-                resources[0] = snsClient.autoClassify( text, analyzeMaxWords, FilterType.ONLY_TERMS, ignoreCase, langFilter );
+        List<Callable<Resource>> tasks = new ArrayList<>();
+        for (FilterType type : new FilterType[] { FilterType.ONLY_TERMS, null, FilterType.ONLY_EVENTS }) {
             // no gazetteer anymore since May 2020
-//            if (filter == null || filter == FilterType.ONLY_LOCATIONS)
-//                resources[1] = snsClient.autoClassify( text, analyzeMaxWords, FilterType.ONLY_LOCATIONS, ignoreCase, langFilter );
-            if (filter == null || filter == FilterType.ONLY_EVENTS)
-                resources[2] = snsClient.autoClassify( text, analyzeMaxWords, FilterType.ONLY_EVENTS, ignoreCase, langFilter );
-        } catch (Exception e) {
-            log.error( "Error calling snsClient.autoClassify for text", e );
+            if (type == null || (filter != null && filter != type)) {
+                tasks.add( () -> null );
+                continue;
+            }
+            tasks.add( () -> {
+                try {
+                    return snsClient.autoClassify( text, analyzeMaxWords, type, ignoreCase, langFilter );
+                } catch (Exception e) {
+                    log.error( "Error calling snsClient.autoClassify for text", e );
+                    return null;
+                }
+            } );
         }
 
-        return resources;
+        return resolver.resolveAll( tasks ).toArray( new Resource[3] );
     }
 
     /**
@@ -578,20 +973,23 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
      * @return the resources in the following order: Thesaurus, Gazetteer, Chronical
      */
     private Resource[] snsAutoClassifyURL(URL url, FilterType filter, String langFilter) {
-        Resource[] resources = new Resource[3];
-        try {
-            if (filter == null || filter == FilterType.ONLY_TERMS)
-                resources[0] = snsClient.autoClassifyToUrl( url.toString(), FilterType.ONLY_TERMS, langFilter );
-            if (filter == null || filter == FilterType.ONLY_LOCATIONS)
-                resources[1] = snsClient.autoClassifyToUrl( url.toString(), FilterType.ONLY_LOCATIONS, langFilter );
-            if (filter == null || filter == FilterType.ONLY_EVENTS)
-                resources[2] = snsClient.autoClassifyToUrl( url.toString(), FilterType.ONLY_EVENTS, langFilter );
-
-        } catch (Exception e) {
-            log.error( "Error calling snsClient.autoClassifyToUrl", e );
+        List<Callable<Resource>> tasks = new ArrayList<>();
+        for (FilterType type : new FilterType[] { FilterType.ONLY_TERMS, FilterType.ONLY_LOCATIONS, FilterType.ONLY_EVENTS }) {
+            if (filter != null && filter != type) {
+                tasks.add( () -> null );
+                continue;
+            }
+            tasks.add( () -> {
+                try {
+                    return snsClient.autoClassifyToUrl( url.toString(), type, langFilter );
+                } catch (Exception e) {
+                    log.error( "Error calling snsClient.autoClassifyToUrl", e );
+                    return null;
+                }
+            } );
         }
 
-        return resources;
+        return resolver.resolveAll( tasks ).toArray( new Resource[3] );
     }
 
     /**
@@ -619,7 +1017,7 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
         return resource;
     }
 
-    private String getSearchTypeFromQueryTerm(String queryTerm) {
+    private static String getSearchTypeFromQueryTerm(String queryTerm) {
         String searchType = null;
         // if query contains a wildcard, it will override the given matching
         // type
@@ -634,7 +1032,7 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
     }
 
     /** Determine SearchType for SNS dependent from passed matching type. */
-    private String getSNSSearchType(de.ingrid.external.ThesaurusService.MatchingType matchingType, String queryTerm) {
+    static String getSNSSearchType(de.ingrid.external.ThesaurusService.MatchingType matchingType, String queryTerm) {
         // default is all locations !
         String searchType = "begins_with";
         String querySearchType = getSearchTypeFromQueryTerm( queryTerm );
@@ -652,7 +1050,7 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
     }
 
     /** Determine SearchType for SNS dependent from passed matching type. */
-    private String getSNSSearchType(de.ingrid.external.GazetteerService.MatchingType matchingType, String queryTerm) {
+    static String getSNSSearchType(de.ingrid.external.GazetteerService.MatchingType matchingType, String queryTerm) {
         String searchType = "begins_with";
 
         String querySearchType = getSearchTypeFromQueryTerm( queryTerm );
@@ -694,7 +1092,7 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
      *            language from request, pass null if default language !
      * @return SNS language filter
      */
-    private String getSNSLanguageFilter(Locale language) {
+    static String getSNSLanguageFilter(Locale language) {
         // default is german !
         String langFilter = "de";
         if (language != null) {
@@ -706,76 +1104,53 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
 
     /**
      * So far the SNS-Service always delivers 40 results and you can only define the page. Moreover it is not possible to set more than one
-     * Collection to match the results. That brings the problem of paging. The only workaround here is to request all collections with all
-     * necessary pages and only extract "length" entries from the result. The formular is: pagesToFetch =
-     * ROUND((page*length)/staticPageNumCount) + ROUND(length/staticPageNumCount) + pageOffset E.g.: page=10, length=10: fetch for each
-     * collection/type the pages 0,1,2 (which returns 120 results for each collection (strict page results=40). Given we request 3
-     * collections this means we get max. 360 hits from which we only return 10 hits.
-     *
+     * Collection to match the results. The results of all collections are therefore merged by an {@link SNSEventCursor}, which is kept
+     * for the following pages of the same search. So a page only requests the SNS pages not fetched by a former page and the concepts of
+     * its events.
      */
     @Override
     public Event[] findEventsFromQueryTerm(String term, de.ingrid.external.ChronicleService.MatchingType matchingType, String[] inCollections, String dateStart, String dateEnd,
             Locale lang, int page, int length) {
-        List<Event> events = new ArrayList<>();
-        int totalResults = 0;
-
         String langFilter = getSNSLanguageFilter( lang );
         String type = getSNSSearchType( matchingType, term );
 
-        // create an empty collection so that code below is executed!
-        if (inCollections == null)
-            inCollections = new String[] { "" };
+        // an empty collection searches all collections
+        String[] collections = inCollections == null ? new String[] { "" } : inCollections;
+
+        String cursorKey = String.join( "|", term, type, String.join( ",", collections ), String.valueOf( dateStart ),
+                String.valueOf( dateEnd ), langFilter );
+        SNSEventCursor cursor = eventCursors.get( cursorKey );
+        if (cursor == null) {
+            // without the cursor cache the next page would never be used
+            cursor = new SNSEventCursor( collections,
+                    (collection, p) -> snsClient.findEvents( term, type, collection, p, dateStart, dateEnd, langFilter, SNSClient.NUM_SEARCH_RESULTS ),
+                    eventCursors.getMaxEntries() > 0 ? resolver : null );
+            eventCursors.put( cursorKey, cursor );
+        }
 
+        List<Event> events = new ArrayList<>();
         try {
-            List<String> uniqueResults = new ArrayList<>();
-            int maxPage = new Double( Math.floor( (page * length) / SNSClient.NUM_SEARCH_RESULTS ) ).intValue() + SNSClient.PAGE_START;
-            int extraPages = new Double( Math.floor( length / SNSClient.NUM_SEARCH_RESULTS ) ).intValue();
-            int start = new Long( (page * length) % SNSClient.NUM_SEARCH_RESULTS ).intValue();
-            int pos = 0;
-
-            // iterate over all collections or request more search results and
-            // filter afterwards
-            for (String collection : inCollections) {
-                int numResultsOfCollection = 0;
-                for (int p = 1; p <= (maxPage + extraPages); p++) {
-                    Resource eventsRes = snsClient.findEvents( term, type, collection, p, dateStart, dateEnd, langFilter, length );
-                    numResultsOfCollection = RDFUtils.getTotalResults( eventsRes.getModel() );
-
-                    // return after all requested hits are collected
-                    if (events.size() == length)
-                        break;
-
-                    // TODO: iterator is not sorted, should be result1, result2,
-                    // ...
-                    NodeIterator it = RDFUtils.getResults( eventsRes );
-                    while (it.hasNext()) {
-                        // only start to return results from correct page
-                        RDFNode eventNode = it.next();
-                        String eventId = RDFUtils.getEventId( eventNode.asResource() );
-                        // skip identical results
-                        if (uniqueResults.contains( eventId ))
-                            continue;
-                        if (start > pos++)
-                            continue;
-                        // get complete concept and map it to an event
-                        Resource eventRes = snsClient.getTerm( eventId, langFilter, FilterType.ONLY_EVENTS );
-                        events.add( snsMapper.mapToEvent( eventRes, langFilter ) );
-                        uniqueResults.add( eventId );
-                        // return after all requested hits are collected
-                        if (events.size() == length)
-                            break;
-                    }
-                }
-                totalResults += numResultsOfCollection;
+            List<String> eventIds = cursor.getEventIds( page * length, length );
+            if (eventIds.size() < length && !cursor.isExhausted()) {
+                // a request failed, do not keep the cursor
+                eventCursors.remove( cursorKey );
+                checkAvailable( snsClient.getUrlByFilter( FilterType.ONLY_EVENTS ) );
             }
-        } catch (RemoteException e) {
-            e.printStackTrace();
-            return new Event[0];
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+
+            // get complete concepts in parallel and map them to events
+            List<Callable<Event>> tasks = new ArrayList<>();
+            for (String eventId : eventIds) {
+                tasks.add( () -> fetchEvent( eventId, langFilter ) );
+            }
+            for (Event event : resolver.resolveAll( tasks )) {
+                if (event != null)
+                    events.add( event );
+            }
+        } catch (IOException e) {
+            log.error( "Error when searching events!", e );
             return new Event[0];
         }
-        return events.toArray( new Event[totalResults] );
+        return events.toArray( new Event[events.size()] );
     }
 
     @Override
@@ -785,7 +1160,11 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
         String langFilter = getSNSLanguageFilter( lang );
         try {
             Resource eventsRes = snsClient.anniversary( date, langFilter );
-            events = snsMapper.mapToAnniversaries( eventsRes, langFilter );
+            if (eventsRes == null) {
+                checkAvailable( snsClient.getUrlByFilter( FilterType.ONLY_EVENTS ) );
+                return new Event[0];
+            }
+            events = map( SNSMetrics.ANNIVERSARY, () -> snsMapper.mapToAnniversaries( eventsRes, langFilter ) );
 
         } catch (RemoteException e) {
             log.error( "Error when getting anniversaries!", e );
@@ -797,8 +1176,79 @@ public class SNSService implements GazetteerService, ThesaurusService, FullClass
     @Override
     public Event getEvent(String eventId, Locale lang) {
         String langFilter = getSNSLanguageFilter( lang );
-        Resource eventRes = snsClient.getTerm( eventId, langFilter, FilterType.ONLY_EVENTS );
-        return snsMapper.mapToEvent( eventRes, langFilter );
+        return fetchEvent( eventId, langFilter );
+    }
+
+    /** Get the term with the given id, from the concept cache if possible. Returns null if not found. */
+    private Term fetchTerm(String termId, String langFilter) {
+        String serviceUrl = snsClient.getUrlByFilter( FilterType.ONLY_TERMS );
+        Term term = conceptCache.getTerm( serviceUrl, termId, langFilter );
+        if (term == null) {
+            String staleKey = "term|" + serviceUrl + "|" + langFilter + "|" + termId;
+            Map<String, SNSConcept> concepts = snsClient.getTermConcepts( termId, langFilter, FilterType.ONLY_TERMS );
+            if (concepts != null) {
+                term = map( SNSMetrics.GET_TERM, () -> snsMapper.mapToTerm( getConcept( concepts, termId ), new TermImpl(), langFilter ) );
+                conceptCache.putTerm( serviceUrl, termId, langFilter, term );
+                putStale( staleKey, SNSStaleStore.TERMS, List.of( term ) );
+            } else if (!snsClient.isAvailable( serviceUrl )) {
+                term = getStale( staleKey, SNSStaleStore.TERMS ).get( 0 );
+            }
+        }
+        return term;
+    }
+
+    /** Get the location with the given id, from the concept cache if possible. Returns null if not found. */
+    private Location fetchLocation(String locationId, String langFilter) {
+        String serviceUrl = snsClient.getUrlByFilter( FilterType.ONLY_LOCATIONS );
+        Location location = conceptCache.getLocation( serviceUrl, locationId, langFilter );
+        if (location == null) {
+            String staleKey = "location|" + serviceUrl + "|" + langFilter + "|" + locationId;
+            Map<String, SNSConcept> concepts = snsClient.getTermConcepts( locationId, langFilter, FilterType.ONLY_LOCATIONS );
+            if (concepts != null) {
+                location = map( SNSMetrics.GET_TERM, () -> snsMapper.mapToLocation( getConcept( concepts, locationId ), new LocationImpl(), langFilter ) );
+                conceptCache.putLocation( serviceUrl, locationId, langFilter, location );
+                putStale( staleKey, SNSStaleStore.LOCATIONS, List.of( location ) );
+            } else if (!snsClient.isAvailable( serviceUrl )) {
+                location = getStale( staleKey, SNSStaleStore.LOCATIONS ).get( 0 );
+            }
+        }
+        return location;
+    }
+
+    /** Get the event with the given id, from the concept cache if possible. Returns null if not found. */
+    private Event fetchEvent(String eventId, String langFilter) {
+        String serviceUrl = snsClient.getUrlByFilter( FilterType.ONLY_EVENTS );
+        Event event = conceptCache.getEvent( serviceUrl, eventId, langFilter );
+        if (event == null) {
+            String staleKey = "event|" + serviceUrl + "|" + langFilter + "|" + eventId;
+            Resource eventRes = snsClient.getTerm( eventId, langFilter, FilterType.ONLY_EVENTS );
+            if (eventRes != null) {
+                event = map( SNSMetrics.GET_TERM, () -> snsMapper.mapToEvent( eventRes, langFilter ) );
+                conceptCache.putEvent( serviceUrl, eventId, langFilter, event );
+                putStale( staleKey, SNSStaleStore.EVENTS, List.of( event ) );
+            } else if (!snsClient.isAvailable( serviceUrl )) {
+                event = getStale( staleKey, SNSStaleStore.EVENTS ).get( 0 );
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Get the concept with the given uri from a fetched document. A concept not contained in the
+     * document is returned without properties, like the resource of an empty model.
+     */
+    private static SNSConcept getConcept(Map<String, SNSConcept> concepts, String uri) {
+        SNSConcept concept = concepts.get( uri );
+        return concept != null ? concept : new SNSConcept( uri );
+    }
+
+    /** Get the concepts with the given uris from a fetched document, see {@link #getConcept(Map, String)}. */
+    private static List<SNSConcept> getConcepts(Map<String, SNSConcept> concepts, List<String> uris) {
+        List<SNSConcept> result = new ArrayList<>( uris.size() );
+        for (String uri : uris) {
+            result.add( getConcept( concepts, uri ) );
+        }
+        return result;
     }
 
     private String getHtmlContent(URL url) {
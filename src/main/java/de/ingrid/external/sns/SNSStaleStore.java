@@ -0,0 +1,469 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.ingrid.external.om.Event;
+import de.ingrid.external.om.Link;
+import de.ingrid.external.om.Location;
+import de.ingrid.external.om.RelatedTerm;
+import de.ingrid.external.om.Term;
+import de.ingrid.external.om.impl.EventImpl;
+import de.ingrid.external.om.impl.LinkImpl;
+import de.ingrid.external.om.impl.LocationImpl;
+import de.ingrid.external.om.impl.RelatedTermImpl;
+import de.ingrid.external.om.impl.TermImpl;
+
+/**
+ * Persistent store of the last successfully mapped SNS results, served stale while an SNS service
+ * is not available (see {@link SNSCircuitBreaker}).
+ * <p>
+ * The results are appended to a single file, every record has a checksum and the last record of a
+ * key wins. An unchanged result is not written again. On opening, the file is scanned to build the
+ * index of the keys, a torn record at the end (e.g. after a crash) is cut off. When the file
+ * contains more replaced than current records, it is compacted.
+ */
+public class SNSStaleStore implements Closeable {
+
+    private final static Logger log = LogManager.getLogger( SNSStaleStore.class );
+
+    // the file is only compacted above this size
+    private static final long MIN_COMPACT_SIZE = 1024 * 1024;
+
+    /** Writes and reads the values of a result. */
+    public interface Codec<T> {
+        void write(DataOutput out, T value) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    private final Path file;
+    private FileChannel channel;
+
+    // position of the current record of every key
+    private final Map<String, Record> index = new HashMap<>();
+    private long liveBytes;
+
+    /**
+     * Open the store, the file is created if it does not exist.
+     */
+    public SNSStaleStore(File file) throws IOException {
+        this.file = file.toPath();
+        if (this.file.getParent() != null) {
+            Files.createDirectories( this.file.getParent() );
+        }
+        this.channel = FileChannel.open( this.file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+        load();
+    }
+
+    /**
+     * @return the number of stored results
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the size of the file in bytes
+     */
+    public synchronized long getFileSize() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Store the result of the given key, replacing the former one.
+     */
+    public synchronized <T> void put(String key, Codec<T> codec, List<T> values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( bytes );
+        // header is filled below
+        out.writeInt( 0 );
+        out.writeInt( 0 );
+        writeString( out, key );
+        out.writeInt( values.size() );
+        for (T value : values) {
+            codec.write( out, value );
+        }
+        out.flush();
+
+        ByteBuffer record = ByteBuffer.wrap( bytes.toByteArray() );
+        int length = record.limit() - 8;
+        int checksum = checksum( record.array(), 8, length );
+        Record former = index.get( key );
+        if (former != null && former.length == length && former.checksum == checksum) {
+            // unchanged
+            return;
+        }
+        record.putInt( 0, length );
+        record.putInt( 4, checksum );
+
+        long position = channel.size();
+        while (record.hasRemaining()) {
+            channel.write( record, position + record.position() );
+        }
+        index.put( key, new Record( position, length, checksum ) );
+        liveBytes += 8 + length - (former != null ? 8 + former.length : 0);
+
+        if (position > MIN_COMPACT_SIZE && channel.size() > 2 * liveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * @return the stored result of the given key or null if none was stored
+     */
+    public synchronized <T> List<T> get(String key, Codec<T> codec) throws IOException {
+        Record record = index.get( key );
+        if (record == null) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream( read( record.position + 8, record.length ) ) );
+        if (!key.equals( readString( in ) )) {
+            throw new IOException( "Stale store corrupted at position " + record.position );
+        }
+        int size = in.readInt();
+        List<T> values = new ArrayList<>( size );
+        for (int i = 0; i < size; i++) {
+            values.add( codec.read( in ) );
+        }
+        return values;
+    }
+
+    /**
+     * Rewrite the file with the current records only.
+     */
+    public synchronized void compact() throws IOException {
+        Path compacted = file.resolveSibling( file.getFileName() + ".compact" );
+        Map<String, Record> newIndex = new HashMap<>();
+        try (FileChannel out = FileChannel.open( compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING )) {
+            long position = 0;
+            for (Map.Entry<String, Record> entry : index.entrySet()) {
+                Record record = entry.getValue();
+                ByteBuffer buffer = ByteBuffer.wrap( read( record.position, 8 + record.length ) );
+                while (buffer.hasRemaining()) {
+                    out.write( buffer, position + buffer.position() );
+                }
+                newIndex.put( entry.getKey(), new Record( position, record.length, record.checksum ) );
+                position += 8 + record.length;
+            }
+            out.force( true );
+        }
+        channel.close();
+        Files.move( compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        channel = FileChannel.open( file, StandardOpenOption.READ, StandardOpenOption.WRITE );
+        index.clear();
+        index.putAll( newIndex );
+        if (log.isDebugEnabled()) {
+            log.debug("Compacted stale store {} to {} bytes", file, channel.size());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /** Build the index from the file, cut off a torn or corrupted end. */
+    private void load() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate( 8 );
+        while (position + 8 <= size) {
+            header.clear();
+            readFully( header, position );
+            int length = header.getInt( 0 );
+            int checksum = header.getInt( 4 );
+            if (length < 0 || position + 8 + length > size) {
+                break;
+            }
+            byte[] payload = read( position + 8, length );
+            if (checksum( payload, 0, length ) != checksum) {
+                break;
+            }
+            String key = readString( new DataInputStream( new ByteArrayInputStream( payload ) ) );
+            Record former = index.put( key, new Record( position, length, checksum ) );
+            liveBytes += 8 + length - (former != null ? 8 + former.length : 0);
+            position += 8 + length;
+        }
+        if (position < size) {
+            log.warn("Cutting off corrupted end of stale store {} at position {} of {}", file, position, size);
+            channel.truncate( position );
+        }
+        if (log.isInfoEnabled()) {
+            log.info("Opened stale store {} with {} results", file, index.size());
+        }
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate( length );
+        readFully( buffer, position );
+        return buffer.array();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read( buffer, position + buffer.position() ) < 0) {
+                throw new EOFException( "Unexpected end of stale store " + file );
+            }
+        }
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update( bytes, offset, length );
+        return (int) crc.getValue();
+    }
+
+    private static class Record {
+
+        final long position;
+        final int length;
+        final int checksum;
+
+        Record(long position, int length, int checksum) {
+            this.position = position;
+            this.length = length;
+            this.checksum = checksum;
+        }
+    }
+
+    // ----------------------- Codecs -----------------------------------
+
+    public static final Codec<Term> TERMS = new Codec<Term>() {
+        @Override
+        public void write(DataOutput out, Term term) throws IOException {
+            writeTerm( out, term );
+        }
+
+        @Override
+        public Term read(DataInput in) throws IOException {
+            return readTerm( in, new TermImpl() );
+        }
+    };
+
+    public static final Codec<RelatedTerm> RELATED_TERMS = new Codec<RelatedTerm>() {
+        @Override
+        public void write(DataOutput out, RelatedTerm term) throws IOException {
+            writeTerm( out, term );
+            writeString( out, term.getRelationType() == null ? null : term.getRelationType().name() );
+        }
+
+        @Override
+        public RelatedTerm read(DataInput in) throws IOException {
+            RelatedTerm term = readTerm( in, new RelatedTermImpl() );
+            String relationType = readString( in );
+            if (relationType != null) {
+                term.setRelationType( RelatedTerm.RelationType.valueOf( relationType ) );
+            }
+            return term;
+        }
+    };
+
+    public static final Codec<Location> LOCATIONS = new Codec<Location>() {
+        @Override
+        public void write(DataOutput out, Location location) throws IOException {
+            writeString( out, location.getId() );
+            writeString( out, location.getName() );
+            writeString( out, location.getTypeId() );
+            writeString( out, location.getTypeName() );
+            writeString( out, location.getQualifier() );
+            writeString( out, location.getNativeKey() );
+            float[] boundingBox = location.getBoundingBox();
+            out.writeBoolean( boundingBox != null && boundingBox.length == 4 );
+            if (boundingBox != null && boundingBox.length == 4) {
+                for (float coordinate : boundingBox) {
+                    out.writeFloat( coordinate );
+                }
+            }
+            out.writeBoolean( location.getIsExpired() );
+            writeString( out, location.getExpiredDate() );
+            String[] successorIds = location.getSuccessorIds();
+            out.writeInt( successorIds == null ? -1 : successorIds.length );
+            if (successorIds != null) {
+                for (String successorId : successorIds) {
+                    writeString( out, successorId );
+                }
+            }
+        }
+
+        @Override
+        public Location read(DataInput in) throws IOException {
+            Location location = new LocationImpl();
+            location.setId( readString( in ) );
+            location.setName( readString( in ) );
+            location.setTypeId( readString( in ) );
+            location.setTypeName( readString( in ) );
+            location.setQualifier( readString( in ) );
+            location.setNativeKey( readString( in ) );
+            if (in.readBoolean()) {
+                location.setBoundingBox( in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat() );
+            }
+            location.setIsExpired( in.readBoolean() );
+            location.setExpiredDate( readString( in ) );
+            int successors = in.readInt();
+            if (successors >= 0) {
+                String[] successorIds = new String[successors];
+                for (int i = 0; i < successors; i++) {
+                    successorIds[i] = readString( in );
+                }
+                location.setSuccessorIds( successorIds );
+            }
+            return location;
+        }
+    };
+
+    public static final Codec<Event> EVENTS = new Codec<Event>() {
+        @Override
+        public void write(DataOutput out, Event event) throws IOException {
+            writeString( out, event.getId() );
+            writeString( out, event.getTitle() );
+            writeString( out, event.getDescription() );
+            writeString( out, event.getTypeId() );
+            writeDate( out, event.getTimeAt() );
+            writeDate( out, event.getTimeRangeFrom() );
+            writeDate( out, event.getTimeRangeTo() );
+            List<Link> links = event.getLinks();
+            out.writeInt( links == null ? 0 : links.size() );
+            if (links != null) {
+                for (Link link : links) {
+                    writeString( out, link.getTitle() );
+                    writeString( out, link.getLinkAddress() );
+                }
+            }
+        }
+
+        @Override
+        public Event read(DataInput in) throws IOException {
+            Event event = new EventImpl();
+            event.setId( readString( in ) );
+            event.setTitle( readString( in ) );
+            event.setDescription( readString( in ) );
+            event.setTypeId( readString( in ) );
+            event.setTimeAt( readDate( in ) );
+            event.setTimeRangeFrom( readDate( in ) );
+            event.setTimeRangeTo( readDate( in ) );
+            int links = in.readInt();
+            for (int i = 0; i < links; i++) {
+                Link link = new LinkImpl();
+                link.setTitle( readString( in ) );
+                link.setLinkAddress( readString( in ) );
+                event.addLink( link );
+            }
+            return event;
+        }
+    };
+
+    private static void writeTerm(DataOutput out, Term term) throws IOException {
+        writeString( out, term.getId() );
+        writeString( out, term.getName() );
+        writeString( out, term.getType() == null ? null : term.getType().name() );
+        writeString( out, term.getAlternateId() );
+        writeString( out, term.getAlternateName() );
+        List<String> inspireThemes = term.getInspireThemes();
+        out.writeInt( inspireThemes == null ? -1 : inspireThemes.size() );
+        if (inspireThemes != null) {
+            for (String theme : inspireThemes) {
+                writeString( out, theme );
+            }
+        }
+    }
+
+    private static <T extends Term> T readTerm(DataInput in, T term) throws IOException {
+        term.setId( readString( in ) );
+        term.setName( readString( in ) );
+        String type = readString( in );
+        if (type != null) {
+            term.setType( Term.TermType.valueOf( type ) );
+        }
+        term.setAlternateId( readString( in ) );
+        term.setAlternateName( readString( in ) );
+        int themes = in.readInt();
+        if (themes >= 0) {
+            List<String> inspireThemes = new ArrayList<>( themes );
+            for (int i = 0; i < themes; i++) {
+                inspireThemes.add( readString( in ) );
+            }
+            term.setInspireThemes( inspireThemes );
+        }
+        return term;
+    }
+
+    /** Strings may be null and longer than the 64k of {@link DataOutput#writeUTF(String)}. */
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt( -1 );
+            return;
+        }
+        byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    private static void writeDate(DataOutput out, Date date) throws IOException {
+        out.writeBoolean( date != null );
+        if (date != null) {
+            out.writeLong( date.getTime() );
+        }
+    }
+
+    private static Date readDate(DataInput in) throws IOException {
+        return in.readBoolean() ? new Date( in.readLong() ) : null;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ * 
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.FullClassifyService.FilterType;
+import org.apache.jena.rdf.model.Resource;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput measurements which depend on the machine and are therefore not part of the build
+ * (the class is not run as a test). Run the main method, e.g. from the IDE.
+ */
+public class SNSBenchmark {
+
+    private static final int REQUESTS_PER_RUN = 64;
+
+    private static final long SERVER_DELAY = 100;
+
+    private static final String[] WORDS = { "wasser", "luft", "boden", "abfall", "energie", "klima", "natur", "schutz",
+            "lärm", "strahlung", "chemikalie", "verkehr", "gewässer", "grund", "qualität", "belastung" };
+
+    public static void main(String[] args) throws Exception {
+        clientThroughput();
+        labelIndexSearchTime();
+    }
+
+    /** getTerm requests per second of 1 and 8 caller threads against a stand-in server with 100ms latency. */
+    private static void clientThroughput() throws Exception {
+        try (SNSStubServer server = new SNSStubServer()) {
+            server.respond("/umthes/de/concepts/", "/stub/concept.rdf");
+            server.setDelay(SERVER_DELAY);
+            SNSClient snsClient = new SNSClient("", "", "de",
+                    new URL(server.getUrl("umthes")),
+                    new URL(server.getUrl("gazetteer")),
+                    new URL(server.getUrl("chronik")));
+
+            // warm up connections
+            runRequests(server, snsClient, 4, 8);
+
+            double sequential = runRequests(server, snsClient, 1, REQUESTS_PER_RUN);
+            double parallel = runRequests(server, snsClient, 8, REQUESTS_PER_RUN);
+            System.out.printf("getTerm throughput: 1 thread = %d req/s, 8 threads = %d req/s%n",
+                    Math.round(sequential), Math.round(parallel));
+        }
+    }
+
+    /** Merge time and average typeahead search time of a label index with a million labels. */
+    private static void labelIndexSearchTime() {
+        int numLabels = 1000000;
+        Random random = new Random(42);
+        SNSLabelIndex<Integer> index = new SNSLabelIndex<>();
+        for (int i = 0; i < numLabels; i++) {
+            String label = WORDS[random.nextInt(WORDS.length)] + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            index.add(String.valueOf(i), i, Collections.singletonList(label));
+        }
+        long start = System.nanoTime();
+        index.merge();
+        long mergeTime = (System.nanoTime() - start) / 1000000;
+
+        String[] queries = { "wasserl", "luftbod", "klimaschutz 1", "energielärm 99" };
+        String[] types = { "begins_with", "contains" };
+        index.search("warm up", "contains", 40);
+        int searches = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < 25; i++) {
+            for (String query : queries) {
+                for (String type : types) {
+                    index.search(query, type, SNSClient.NUM_SEARCH_RESULTS);
+                    searches++;
+                }
+            }
+        }
+        double searchTime = (System.nanoTime() - start) / 1e6;
+        System.out.printf("label index of %d labels: merged in %dms, average search time %.3fms%n",
+                numLabels, mergeTime, searchTime / searches);
+    }
+
+    /**
+     * Fetch the given number of terms with the given number of threads.
+     *
+     * @return the throughput in requests per second
+     */
+    private static double runRequests(SNSStubServer server, SNSClient snsClient, int threads, int requests) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<Resource>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                String termId = server.getUrl("umthes") + "_" + i;
+                futures.add(executor.submit(() -> snsClient.getTerm(termId, "de", FilterType.ONLY_TERMS)));
+            }
+            for (Future<Resource> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            return requests / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
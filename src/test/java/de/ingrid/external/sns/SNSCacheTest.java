@@ -0,0 +1,122 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ * 
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SNSCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+
+    private SNSCache<String, String> cache;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new SNSCache<>(3, 100, now::get);
+    }
+
+    @Test
+    public void testGetAndPut() {
+        assertNull(cache.get("a"));
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a"));
+
+        SNSCache.Statistics stats = cache.getStatistics();
+        assertEquals(1, stats.getSize());
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0.5, stats.getHitRate());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        // touch "a" so "b" is the least recently used one
+        cache.get("a");
+        cache.put("d", "D");
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        assertEquals("D", cache.get("d"));
+        assertEquals(1, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    public void testTimeToLive() {
+        cache.put("a", "A");
+        now.addAndGet(99);
+        assertEquals("A", cache.get("a"));
+
+        now.addAndGet(1);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getStatistics().getExpirations());
+
+        cache.put("b", "B");
+        cache.put("c", "C");
+        now.addAndGet(100);
+        cache.purge();
+        assertEquals(0, cache.size());
+        assertEquals(3, cache.getStatistics().getExpirations());
+    }
+
+    @Test
+    public void testRemovalListener() {
+        List<String> removed = new ArrayList<>();
+        cache.setRemovalListener(removed::add);
+        cache.put("a", "A");
+        cache.put("a", "A2");
+        cache.put("b", "B");
+        cache.remove("b");
+        cache.put("c", "C");
+        cache.put("d", "D");
+        cache.put("e", "E");
+        assertEquals(List.of("A", "B", "A2"), removed);
+
+        now.addAndGet(100);
+        assertNull(cache.get("c"));
+        cache.purge();
+        cache.clear();
+        assertEquals(List.of("A", "B", "A2", "C", "D", "E"), removed.subList(0, 6));
+        assertEquals(6, removed.size());
+    }
+
+    @Test
+    public void testDisabled() {
+        SNSCache<String, String> disabled = new SNSCache<>(0, 100, now::get);
+        disabled.put("a", "A");
+        assertNull(disabled.get("a"));
+        assertEquals(0, disabled.size());
+    }
+}
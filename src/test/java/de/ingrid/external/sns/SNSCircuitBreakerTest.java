@@ -0,0 +1,281 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.FullClassifyService.FilterType;
+import de.ingrid.external.sns.SNSCircuitBreaker.State;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Circuit breaker, retries and hedged requests against slow and failing endpoints of a local
+ * stand-in SNS server.
+ */
+public class SNSCircuitBreakerTest {
+
+    private SNSStubServer server;
+    private SNSService snsService;
+    private SNSMetricsRegistry metrics;
+    private String termId;
+    private String locationId;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new SNSStubServer();
+        server.respond("/umthes/de/concepts/", "/stub/concept.rdf");
+        server.respond("/gazetteer/de/concepts/", "/stub/location.rdf");
+        snsService = new SNSService();
+        metrics = new SNSMetricsRegistry();
+        snsService.setMetrics(metrics);
+        termId = server.getUrl("umthes") + "_00001";
+        locationId = server.getUrl("gazetteer") + "_06412000";
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testBreakerStates() throws Exception {
+        SNSCircuitBreaker breaker = new SNSCircuitBreaker(2, 100);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.recordFailure());
+        assertEquals(State.CLOSED, breaker.getState());
+        // only the change of the state is reported, so that it is logged once
+        assertTrue(breaker.recordFailure());
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertFalse(breaker.recordFailure());
+
+        Thread.sleep(150);
+        // only one trial request
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        // failed trial opens again
+        assertFalse(breaker.recordFailure());
+        assertFalse(breaker.allowRequest());
+
+        Thread.sleep(150);
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.recordSuccess());
+        assertEquals(State.CLOSED, breaker.getState());
+        assertFalse(breaker.recordSuccess());
+
+        // disabled
+        breaker = new SNSCircuitBreaker(0, 100);
+        for (int i = 0; i < 10; i++) {
+            breaker.recordFailure();
+        }
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testOpenBreakerFailsFast() throws Exception {
+        snsService.init(server.createSettings("sns.retries=0", "sns.circuitBreaker.failureThreshold=3",
+                "sns.circuitBreaker.openTime=60000", "sns.cache.maxEntries=0"));
+        server.fail("/umthes/", 503);
+        for (int i = 0; i < 2; i++) {
+            assertNull(snsService.getTerm(termId, Locale.GERMAN));
+        }
+        // the failure opening the breaker reports the outage instead of an empty result
+        RuntimeException e = assertThrows(RuntimeException.class, () -> snsService.getTerm(termId, Locale.GERMAN));
+        assertEquals("SNS_TIMEOUT", e.getMessage());
+        assertEquals(3, server.getRequestCount());
+
+        // no request anymore
+        long start = System.currentTimeMillis();
+        assertThrows(RuntimeException.class, () -> snsService.getTerm(termId, Locale.GERMAN));
+        assertThrows(RuntimeException.class, () -> snsService.getHierarchyPathToTop(termId, Locale.GERMAN));
+        assertTrue(System.currentTimeMillis() - start < 500);
+        assertEquals(3, server.getRequestCount());
+
+        // other services are not affected
+        assertEquals("06412000", snsService.getLocation(locationId, Locale.GERMAN).getNativeKey());
+    }
+
+    @Test
+    public void testOutageReportedByAllFunctions() throws Exception {
+        snsService.init(server.createSettings("sns.retries=0", "sns.circuitBreaker.failureThreshold=1",
+                "sns.circuitBreaker.openTime=60000", "sns.cache.maxEntries=0"));
+        // the text is classified, but the terms can not be fetched
+        server.respond("/umthes/de/autoclassify/", "/stub/classify.rdf");
+        server.fail("/umthes/de/concepts/", 503);
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> snsService.autoClassifyText("Wasser", 100, true, FilterType.ONLY_TERMS, Locale.GERMAN));
+        assertEquals("SNS_TIMEOUT", e.getMessage());
+
+        // open the breakers of the other services
+        server.fail("/gazetteer/", 503);
+        server.fail("/chronik/", 503);
+        assertThrows(RuntimeException.class, () -> snsService.getLocation(locationId, Locale.GERMAN));
+        assertThrows(RuntimeException.class, () -> snsService.getEvent(server.getUrl("chronik") + "_1", Locale.GERMAN));
+
+        for (org.junit.jupiter.api.function.Executable call : List.<org.junit.jupiter.api.function.Executable>of(
+                () -> snsService.getTermsFromText("Wasser", 100, true, Locale.GERMAN),
+                () -> snsService.getLocationsFromText("Wasser", 100, true, Locale.GERMAN),
+                () -> snsService.autoClassifyText("Wasser", 100, true, null, Locale.GERMAN),
+                () -> snsService.getAnniversaries("2000-01-01", Locale.GERMAN),
+                () -> snsService.getEvent(server.getUrl("chronik") + "_1", Locale.GERMAN))) {
+            e = assertThrows(RuntimeException.class, call);
+            assertEquals("SNS_TIMEOUT", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMissingTermIsNoFailure() throws Exception {
+        snsService.init(server.createSettings("sns.circuitBreaker.failureThreshold=2", "sns.cache.maxEntries=0"));
+        server.fail("/umthes/", 404);
+        for (int i = 0; i < 5; i++) {
+            assertNull(snsService.getTerm(termId, Locale.GERMAN));
+        }
+        assertEquals(5, server.getRequestCount());
+    }
+
+    @Test
+    public void testTrialRequestClosesBreaker() throws Exception {
+        snsService.init(server.createSettings("sns.retries=0", "sns.circuitBreaker.failureThreshold=1",
+                "sns.circuitBreaker.openTime=200", "sns.cache.maxEntries=0"));
+        server.fail("/umthes/", 500);
+        assertThrows(RuntimeException.class, () -> snsService.getTerm(termId, Locale.GERMAN));
+        assertThrows(RuntimeException.class, () -> snsService.getTerm(termId, Locale.GERMAN));
+
+        server.recover();
+        Thread.sleep(250);
+        assertEquals("Begriff _00001", snsService.getTerm(termId, Locale.GERMAN).getName());
+        assertEquals("Begriff _00001", snsService.getTerm(termId, Locale.GERMAN).getName());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void testInterruptedTrialRequest() throws Exception {
+        SNSClient client = new SNSClient("", "", "de", new java.net.URL(server.getUrl("umthes")),
+                new java.net.URL(server.getUrl("gazetteer")), new java.net.URL(server.getUrl("chronik")));
+        client.setRetries(0);
+        client.setCircuitBreaker(1, 100);
+        server.fail("/umthes/", 503);
+        assertNull(client.getTermConcepts(termId, "de", FilterType.ONLY_TERMS));
+        assertFalse(client.isAvailable(FilterType.ONLY_TERMS));
+
+        // the trial request is interrupted before SNS answers
+        server.recover();
+        server.setDelay(2000);
+        Thread.sleep(150);
+        Thread trial = new Thread(() -> client.getTermConcepts(termId, "de", FilterType.ONLY_TERMS));
+        trial.start();
+        Thread.sleep(100);
+        trial.interrupt();
+        trial.join(1000);
+        assertFalse(trial.isAlive());
+
+        // the interrupted trial does not keep the breaker half open, the next request is a new trial
+        server.setDelay(0);
+        assertNotNull(client.getTermConcepts(termId, "de", FilterType.ONLY_TERMS));
+        assertTrue(client.isAvailable(FilterType.ONLY_TERMS));
+    }
+
+    @Test
+    public void testInterruptedRequestIsNoFailure() throws Exception {
+        SNSClient client = new SNSClient("", "", "de", new java.net.URL(server.getUrl("umthes")),
+                new java.net.URL(server.getUrl("gazetteer")), new java.net.URL(server.getUrl("chronik")));
+        client.setCircuitBreaker(1, 60000);
+        server.setDelay(2000);
+        // e.g. a cancelled prefetch
+        Thread request = new Thread(() -> client.getTermConcepts(termId, "de", FilterType.ONLY_TERMS));
+        request.start();
+        Thread.sleep(100);
+        request.interrupt();
+        request.join(1000);
+        assertFalse(request.isAlive());
+        assertTrue(client.isAvailable(FilterType.ONLY_TERMS));
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        snsService.init(server.createSettings("sns.retries=1"));
+        server.fail("/umthes/", 503, 1);
+        long start = System.currentTimeMillis();
+        assertEquals("Begriff _00001", snsService.getTerm(termId, Locale.GERMAN).getName());
+        assertTrue(System.currentTimeMillis() - start >= 100, "retry must be delayed");
+        assertEquals(2, server.getRequestCount());
+        assertEquals(0, metrics.getErrorCount(SNSMetrics.GET_TERM));
+
+        // the retry fails as well
+        server.fail("/gazetteer/", 503, 2);
+        assertNull(snsService.getLocation(locationId, Locale.GERMAN));
+        assertEquals(4, server.getRequestCount());
+        assertEquals(1, metrics.getErrorCount(SNSMetrics.GET_TERM));
+    }
+
+    @Test
+    public void testHedgedRequest() throws Exception {
+        snsService.init(server.createSettings("sns.hedgeDelay=100", "sns.cache.maxEntries=0"));
+        // initialize connection and parser before measuring
+        snsService.getLocation(locationId, Locale.GERMAN);
+        int requests = server.getRequestCount();
+
+        // the first response is slow, the hedged one fast
+        server.setDelays(2000, 0);
+        long start = System.currentTimeMillis();
+        assertEquals("Begriff _00001", snsService.getTerm(termId, Locale.GERMAN).getName());
+        assertTrue(System.currentTimeMillis() - start < 1500, "hedged response must be taken");
+        assertEquals(requests + 2, server.getRequestCount());
+
+        // a fast response sends no hedged request
+        server.setDelays();
+        snsService.getLocation(locationId, Locale.GERMAN);
+        assertEquals(requests + 3, server.getRequestCount());
+    }
+
+    @Test
+    public void testLatencyBudget() throws Exception {
+        snsService.init(server.createSettings("sns.latencyBudget=300", "sns.retries=3"));
+        server.setDelay(1000);
+        long start = System.currentTimeMillis();
+        assertNull(snsService.getTerm(termId, Locale.GERMAN));
+        assertTrue(System.currentTimeMillis() - start < 800, "request must be aborted after the latency budget");
+        // no retry after the budget is used up
+        assertEquals(1, metrics.getTimeoutCount(SNSMetrics.GET_TERM));
+    }
+
+    @Test
+    public void testClientAvailability() throws Exception {
+        SNSClient client = new SNSClient("", "", "de", new java.net.URL(server.getUrl("umthes")),
+                new java.net.URL(server.getUrl("gazetteer")), new java.net.URL(server.getUrl("chronik")));
+        client.setRetries(0);
+        client.setCircuitBreaker(1, 60000);
+        server.fail("/gazetteer/", 502);
+        assertNull(client.getTermConcepts(locationId, "de", FilterType.ONLY_LOCATIONS));
+        assertFalse(client.isAvailable(FilterType.ONLY_LOCATIONS));
+        assertTrue(client.isAvailable(FilterType.ONLY_TERMS));
+        assertTrue(client.isAvailable(FilterType.ONLY_EVENTS));
+        assertTrue(client.isAvailable("http://other.thesaurus/"));
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ * 
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.FullClassifyService.FilterType;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load tests of the SNSClient against a local stand-in SNS server.
+ */
+public class SNSClientLoadTest {
+
+    private static final long SERVER_DELAY = 100;
+
+    private SNSStubServer server;
+    private SNSClient snsClient;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new SNSStubServer();
+        server.respond("/umthes/de/concepts/", "/stub/concept.rdf");
+        server.setDelay(SERVER_DELAY);
+        snsClient = new SNSClient("", "", "de",
+                new URL(server.getUrl("umthes")),
+                new URL(server.getUrl("gazetteer")),
+                new URL(server.getUrl("chronik")));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testGetTerm() {
+        String termId = server.getUrl("umthes") + "_00001";
+        Resource term = snsClient.getTerm(termId, "de", FilterType.ONLY_TERMS);
+        assertNotNull(term);
+        assertEquals("Begriff _00001", RDFUtils.getName(term, "de"));
+        assertEquals(server.getUrl("umthes") + "_parent", RDFUtils.getParent(term).asResource().getURI());
+
+        // unknown service path results in 404
+        assertNull(snsClient.getTerm(server.getUrl("gazetteer") + "_00001", "de", FilterType.ONLY_LOCATIONS));
+    }
+
+    @Test
+    public void testRequestsRunInParallel() throws Exception {
+        server.block();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Resource>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String termId = server.getUrl("umthes") + "_" + i;
+                futures.add(executor.submit(() -> snsClient.getTerm(termId, "de", FilterType.ONLY_TERMS)));
+            }
+            // all requests of the caller threads are sent without waiting for each other
+            for (int i = 0; i < 500 && server.getInFlight() < 8; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(8, server.getInFlight(), "requests must not be serialized");
+            server.release();
+            for (Future<Resource> future : futures) {
+                assertNotNull(future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMaxConnectionsPerHost() throws Exception {
+        snsClient.setMaxConnectionsPerHost(2);
+        runRequests(8, 16);
+        assertEquals(2, server.getMaxInFlight());
+    }
+
+    @Test
+    public void testTimeout() {
+        server.block();
+        snsClient.setTimeout(200);
+
+        assertNull(snsClient.getTerm(server.getUrl("umthes") + "_00001", "de", FilterType.ONLY_TERMS));
+        assertEquals(1, server.getInFlight(), "request must be aborted before the server answers");
+    }
+
+    @Test
+    public void testStalledBody() {
+        server.setDelay(0);
+        server.stall("/umthes/de/concepts/");
+        snsClient.setTimeout(200);
+        snsClient.setCircuitBreaker(1, 60000);
+
+        // the headers arrive, the rest of the body never
+        assertNull(snsClient.getTerm(server.getUrl("umthes") + "_00001", "de", FilterType.ONLY_TERMS));
+        assertEquals(1, server.getInFlight(), "request must be aborted before the server sends the body");
+        // the stalled body counts as failure of the service
+        assertFalse(snsClient.isAvailable(FilterType.ONLY_TERMS));
+    }
+
+    @Test
+    public void testHedgedRequestKeepsConnectionWhileReadingBody() throws Exception {
+        server.setDelay(0);
+        // the first request is slow, the hedged one answers, but its body stalls
+        server.setDelays(10000);
+        server.stall("/umthes/de/concepts/_stalled");
+        snsClient.setMaxConnectionsPerHost(2);
+        snsClient.setHedgeDelay(50);
+        snsClient.setLatencyBudget(500);
+        snsClient.setCircuitBreaker(0, 0);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Resource> stalled = executor.submit(() -> snsClient.getTerm(server.getUrl("umthes") + "_stalled", "de", FilterType.ONLY_TERMS));
+            for (int i = 0; i < 100 && server.getRequestCount() < 2; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(2, server.getRequestCount());
+            Thread.sleep(50);
+
+            // both connections are in use until the stalled body is closed
+            assertNotNull(snsClient.getTerm(server.getUrl("umthes") + "_00001", "de", FilterType.ONLY_TERMS));
+            assertTrue(stalled.isDone(), "connection of the hedged request was released before its body was read");
+            assertNull(stalled.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStalledBodyReleasesConnection() throws Exception {
+        server.setDelay(0);
+        server.stall("/umthes/de/concepts/_stalled");
+        snsClient.setMaxConnectionsPerHost(1);
+        snsClient.setTimeout(200);
+        snsClient.setCircuitBreaker(0, 0);
+
+        assertNull(snsClient.getTerm(server.getUrl("umthes") + "_stalled", "de", FilterType.ONLY_TERMS));
+        // the only connection is not kept by the stalled body
+        assertNotNull(snsClient.getTerm(server.getUrl("umthes") + "_00001", "de", FilterType.ONLY_TERMS));
+    }
+
+    @Test
+    public void testMaxConnectionsChangedWhileRunning() throws Exception {
+        server.setDelay(500);
+        snsClient.setMaxConnectionsPerHost(4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Resource>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String termId = server.getUrl("umthes") + "_" + i;
+                futures.add(executor.submit(() -> snsClient.getTerm(termId, "de", FilterType.ONLY_TERMS)));
+            }
+            Thread.sleep(200);
+            // the running requests count against the new maximum
+            snsClient.setMaxConnectionsPerHost(2);
+            for (int i = 4; i < 8; i++) {
+                String termId = server.getUrl("umthes") + "_" + i;
+                futures.add(executor.submit(() -> snsClient.getTerm(termId, "de", FilterType.ONLY_TERMS)));
+            }
+            for (Future<Resource> future : futures) {
+                assertNotNull(future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(4, server.getMaxInFlight());
+    }
+
+    @Test
+    public void testWaitForConnectionWithinLatencyBudget() throws Exception {
+        server.block();
+        snsClient.setMaxConnectionsPerHost(1);
+        snsClient.setLatencyBudget(300);
+        snsClient.setCircuitBreaker(0, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Resource>> futures = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                String termId = server.getUrl("umthes") + "_" + i;
+                futures.add(executor.submit(() -> snsClient.getTerm(termId, "de", FilterType.ONLY_TERMS)));
+            }
+            // the server never answers, so both calls end with the latency budget, also the one
+            // waiting for the connection
+            for (Future<Resource> future : futures) {
+                assertNull(future.get(30, TimeUnit.SECONDS));
+            }
+            assertTrue(server.getInFlight() > 0, "calls must end before the server answers");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRedirects() throws Exception {
+        server.setDelay(0);
+        // requests without side effects follow redirects
+        server.redirect("/umthes/de/concepts/_moved", server.getUrl("umthes") + "de/concepts/_00001.rdf");
+        assertNotNull(snsClient.getTerm(server.getUrl("umthes") + "_moved", "de", FilterType.ONLY_TERMS));
+        assertEquals(2, server.getRequestCount());
+
+        // the document to classify is not sent again to another location
+        server.redirect("/umthes/de/autoclassify/", server.getUrl("umthes") + "de/autoclassify/other.rdf");
+        assertThrows(Exception.class, () -> snsClient.autoClassify("Wasser", 100, FilterType.ONLY_TERMS, true, "de"));
+        assertEquals(3, server.getRequestCount());
+    }
+
+    /** Fetch the given number of terms with the given number of threads. */
+    private void runRequests(int threads, int requests) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Resource>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                String termId = server.getUrl("umthes") + "_" + i;
+                futures.add(executor.submit(() -> snsClient.getTerm(termId, "de", FilterType.ONLY_TERMS)));
+            }
+            for (Future<Resource> future : futures) {
+                assertNotNull(future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
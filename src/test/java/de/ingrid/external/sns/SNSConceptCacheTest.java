@@ -0,0 +1,155 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ * 
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.om.Location;
+import de.ingrid.external.om.Term;
+import de.ingrid.external.om.Term.TermType;
+import de.ingrid.external.om.impl.LocationImpl;
+import de.ingrid.external.om.impl.TermImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SNSConceptCacheTest {
+
+    private SNSStubServer server;
+    private SNSService snsService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new SNSStubServer();
+        server.respond("/umthes/de/concepts/", "/stub/concept.rdf");
+        server.respond("/umthes/en/concepts/", "/stub/concept.rdf");
+        server.respond("/gazetteer/de/concepts/", "/stub/location.rdf");
+        snsService = new SNSService();
+        snsService.init(server.createSettings());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testTermIsFetchedOnce() {
+        String termId = server.getUrl("umthes") + "_00001";
+        Term term = snsService.getTerm(termId, Locale.GERMAN);
+        assertEquals("Begriff _00001", term.getName());
+
+        // modifying the result must not modify the cached term
+        term.setName("changed");
+        term = snsService.getTerm(termId, Locale.GERMAN);
+        assertEquals("Begriff _00001", term.getName());
+        assertEquals(1, server.getRequestCount());
+
+        // other language is another cache entry
+        assertEquals("term _00001", snsService.getTerm(termId, Locale.ENGLISH).getName());
+        assertEquals(2, server.getRequestCount());
+
+        SNSCache.Statistics stats = snsService.getConceptCacheStatistics();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+    }
+
+    @Test
+    public void testLocationIsFetchedOnce() {
+        String locationId = server.getUrl("gazetteer") + "_06412000";
+        Location location = snsService.getLocation(locationId, Locale.GERMAN);
+        Location cached = snsService.getLocation(locationId, Locale.GERMAN);
+        assertEquals(1, server.getRequestCount());
+
+        assertEquals(location.getName(), cached.getName());
+        assertEquals("Gemeinde", cached.getTypeName());
+        assertEquals("06412000", cached.getNativeKey());
+        assertArrayEquals(location.getBoundingBox(), cached.getBoundingBox());
+        assertEquals("2099-12-31", cached.getExpiredDate());
+        assertFalse(cached.getIsExpired());
+    }
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        snsService.init(server.createSettings("sns.cache.maxEntries=0"));
+        String termId = server.getUrl("umthes") + "_00001";
+        snsService.getTerm(termId, Locale.GERMAN);
+        snsService.getTerm(termId, Locale.GERMAN);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testLocationExpiredAfterCaching() {
+        SNSConceptCache cache = new SNSConceptCache(10, 60000);
+
+        // location was mapped while it was still valid
+        Location location = new LocationImpl();
+        location.setId("loc1");
+        location.setExpiredDate(LocalDate.now().minusDays(1).toString());
+        location.setIsExpired(false);
+        cache.putLocation("gazetteer", "loc1", "de", location);
+
+        assertTrue(cache.getLocation("gazetteer", "loc1", "de").getIsExpired());
+        assertNull(cache.getLocation("gazetteer", "loc1", "en"));
+        assertNull(cache.getLocation("thesaurus", "loc1", "de"));
+    }
+
+    @Test
+    public void testLocationExpiredAfterIndexing() {
+        // location stored in the label index while it was still valid
+        Location location = new LocationImpl();
+        location.setId("loc1");
+        location.setExpiredDate(LocalDate.now().minusDays(1).toString());
+        location.setIsExpired(false);
+
+        assertTrue(SNSConceptCache.copyCurrent(location).getIsExpired());
+        assertFalse(location.getIsExpired());
+
+        location.setExpiredDate(LocalDate.now().plusDays(1).toString());
+        assertFalse(SNSConceptCache.copyCurrent(location).getIsExpired());
+    }
+
+    @Test
+    public void testTermCopyKeepsAllProperties() {
+        SNSConceptCache cache = new SNSConceptCache(10, 60000);
+        Term term = new TermImpl("term1", "Wasser", TermType.DESCRIPTOR);
+        term.setAlternateId("GEMETID9242");
+        term.setAlternateName("water");
+        term.setInspireThemes(new ArrayList<>(List.of("Hydrografie")));
+        cache.putTerm("thesaurus", "term1", "de", term);
+
+        Term cached = cache.getTerm("thesaurus", "term1", "de");
+        assertEquals("GEMETID9242", cached.getAlternateId());
+        assertEquals("water", cached.getAlternateName());
+        assertEquals(List.of("Hydrografie"), cached.getInspireThemes());
+
+        // modifying the result must not modify the cached themes
+        cached.getInspireThemes().add("Gewässernetz");
+        assertEquals(List.of("Hydrografie"), cache.getTerm("thesaurus", "term1", "de").getInspireThemes());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.ChronicleService.MatchingType;
+import de.ingrid.external.om.Event;
+import de.ingrid.external.sns.SNSMetrics.Phase;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Paging through an event search in two collections of a local stand-in SNS server. Every
+ * collection has three pages with the results "a" and "b" of the page and a result "shared" which
+ * is found on every page.
+ */
+public class SNSEventCursorTest {
+
+    private static final String[] COLLECTIONS = { "A", "B" };
+
+    private SNSStubServer server;
+    private SNSService snsService;
+    private SNSMetricsRegistry metrics;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new SNSStubServer();
+        server.respond("/chronik/search", "/stub/event-search.rdf");
+        server.respond("/chronik/de/concepts/", "/stub/concept.rdf");
+        snsService = new SNSService();
+        metrics = new SNSMetricsRegistry();
+        snsService.setMetrics(metrics);
+        snsService.init(server.createSettings("sns.retries=0"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testPaging() {
+        assertEquals(List.of("A1a", "A1b", "shared", "A2a"), findEvents(0, 4));
+        assertEquals(List.of("A2b", "A3a", "A3b", "B1a"), findEvents(1, 4));
+        assertEquals(List.of("B1b", "B2a", "B2b", "B3a"), findEvents(2, 4));
+        // no empty slots after the last result
+        assertEquals(List.of("B3b"), findEvents(3, 4));
+        assertEquals(List.of(), findEvents(4, 4));
+
+        // every page was requested once, also the ones requested in the background
+        assertEquals(6, getSearchRequests());
+
+        // paging back does not request SNS again
+        assertEquals(List.of("A2b", "A3a", "A3b", "B1a"), findEvents(1, 4));
+        assertEquals(6, getSearchRequests());
+    }
+
+    @Test
+    public void testNextPageIsPrefetched() throws Exception {
+        assertEquals(List.of("A1a", "A1b"), findEvents(0, 2));
+        // wait for the request in the background
+        for (int i = 0; i < 100 && getSearchRequests() < 2; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, getSearchRequests());
+
+        // the next page is available even if SNS fails now
+        server.fail("/chronik/search", 503);
+        assertEquals(List.of("shared", "A2a"), findEvents(1, 2));
+        assertEquals(2, getSearchRequests());
+    }
+
+    @Test
+    public void testFailedSearchIsRequestedAgain() {
+        server.fail("/chronik/search", 503, 1);
+        assertEquals(List.of(), findEvents(0, 4));
+        assertEquals(List.of("A1a", "A1b", "shared", "A2a"), findEvents(0, 4));
+    }
+
+    @Test
+    public void testWithoutCursorCache() throws Exception {
+        snsService.init(server.createSettings("sns.eventCursor.maxEntries=0"));
+        assertEquals(List.of("A2b", "A3a", "A3b", "B1a"), findEvents(1, 4));
+        assertEquals(List.of("A2b", "A3a", "A3b", "B1a"), findEvents(1, 4));
+    }
+
+    @Test
+    public void testWithoutTotalResults() throws Exception {
+        // three results per page, fewer than a full SNS page, so every collection ends after its first page
+        server.respond("/chronik/search", "/stub/event-search-no-total.rdf");
+        assertEquals(List.of("A1a", "A1b", "shared", "B1a", "B1b"), findEvents(0, 10));
+        assertEquals(2, getSearchRequests());
+    }
+
+    @Test
+    public void testCancelStopsPrefetch() throws Exception {
+        CountDownLatch prefetchStarted = new CountDownLatch(1);
+        CountDownLatch prefetchInterrupted = new CountDownLatch(1);
+        SNSEventCursor cursor = new SNSEventCursor(new String[] { "A" }, (collection, page) -> {
+            if (page == SNSClient.PAGE_START) {
+                return createPage(SNSClient.NUM_SEARCH_RESULTS);
+            }
+            prefetchStarted.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                prefetchInterrupted.countDown();
+            }
+            return null;
+        }, new SNSParallelResolver(2, 0));
+
+        assertEquals(2, cursor.getEventIds(0, 2).size());
+        assertTrue(prefetchStarted.await(1, TimeUnit.SECONDS));
+        cursor.cancel();
+        assertTrue(prefetchInterrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testExpiredCursorIsCancelled() throws Exception {
+        snsService.init(server.createSettings("sns.eventCursor.timeToLive=100"));
+        findEvents(0, 2);
+        Thread.sleep(150);
+        // the expired cursor is replaced, its running prefetch is cancelled and the search starts again
+        assertEquals(List.of("A1a", "A1b"), findEvents(0, 2));
+    }
+
+    /** A page of a search in collection "A" without total, with the given number of results. */
+    private static Resource createPage(int results) {
+        Model model = ModelFactory.createDefaultModel();
+        String sdc = "http://sindice.com/vocab/search#";
+        model.setNsPrefix("sdc", sdc);
+        Resource query = model.createResource("http://test.sns/chronik/search");
+        for (int i = 1; i <= results; i++) {
+            Resource result = model.createResource("http://test.sns/chronik/search#result" + i);
+            result.addProperty(model.createProperty(sdc, "link"), model.createResource("http://test.sns/chronik/_A" + i));
+            query.addProperty(model.createProperty(sdc, "result"), result);
+        }
+        return query;
+    }
+
+    private List<String> findEvents(int page, int length) {
+        List<String> ids = new ArrayList<>();
+        for (Event event : snsService.findEventsFromQueryTerm("Wasser", MatchingType.CONTAINS, COLLECTIONS, null, null,
+                Locale.GERMAN, page, length)) {
+            assertEquals("Begriff " + event.getId().substring(event.getId().lastIndexOf('/') + 1), event.getTitle());
+            ids.add(event.getId().substring(event.getId().lastIndexOf('_') + 1));
+        }
+        return ids;
+    }
+
+    private long getSearchRequests() {
+        return metrics.getTimer(SNSMetrics.FIND_EVENTS, Phase.NETWORK).getCount();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.om.TreeTerm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SNSHierarchyGraphTest {
+
+    private SNSStubServer server;
+    private SNSService snsService;
+    private String base;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new SNSStubServer();
+        server.respond("/umthes/de/hierarchy/_00010", "/stub/hierarchy-up.rdf");
+        server.respond("/umthes/de/hierarchy/_00050", "/stub/hierarchy-top.rdf");
+        server.respond("/umthes/de/hierarchy/_00051", "/stub/hierarchy-top.rdf");
+        server.respond("/umthes/de/hierarchy/_00060", "/stub/hierarchy-down.rdf");
+        server.respond("/umthes/de/hierarchy/scheme", "/stub/hierarchy-scheme.rdf");
+        snsService = new SNSService();
+        snsService.init(server.createSettings());
+        base = server.getUrl("umthes");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testPathToTop() {
+        server.setDelay(100);
+        TreeTerm startTerm = snsService.getHierarchyPathToTop(base + "_00010", Locale.GERMAN);
+        assertEquals("Stickoxide", startTerm.getName());
+        assertNull(startTerm.getChildren());
+        assertEquals(2, startTerm.getParents().size());
+
+        // path beyond the maximum depth of one request
+        TreeTerm term = find(startTerm.getParents(), "Luftschadstoff");
+        assertEquals(startTerm, term.getChildren().get(0));
+        for (String name : new String[] { "Schadstoff", "Stoff", "Chemie", "Stoffe und Materialien" }) {
+            term = term.getParents().get(0);
+            assertEquals(name, term.getName());
+        }
+        assertNull(term.getParents());
+
+        // both paths end in the same top term
+        TreeTerm otherPath = find(startTerm.getParents(), "Stickstoffverbindung");
+        assertSame(term, otherPath.getParents().get(0).getParents().get(0));
+        assertEquals(2, term.getChildren().size());
+
+        // the unknown ancestors of one level are fetched in parallel
+        assertEquals(3, server.getRequestCount());
+        assertEquals(2, server.getMaxInFlight());
+
+        // known parts of the hierarchy are not fetched again
+        assertEquals("Stoffe und Materialien", snsService.getHierarchyPathToTop(base + "_00030", Locale.GERMAN)
+                .getParents().get(0).getParents().get(0).getParents().get(0).getName());
+        assertEquals(2, snsService.getHierarchyPathToTop(base + "_00010", Locale.GERMAN).getParents().size());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void testConcurrentPathToTop() throws Exception {
+        server.setDelay(200);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<TreeTerm>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> snsService.getHierarchyPathToTop(base + "_00010", Locale.GERMAN)));
+            }
+            for (Future<TreeTerm> result : results) {
+                assertEquals(2, result.get().getParents().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // every term is fetched only once
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void testKnownLeafWhileServiceIsDown() throws Exception {
+        snsService.init(server.createSettings("sns.retries=0", "sns.circuitBreaker.failureThreshold=1",
+                "sns.circuitBreaker.openTime=60000"));
+        assertEquals(2, snsService.getHierarchyNextLevel(base + "_00060", Locale.GERMAN).length);
+
+        server.fail("/umthes/", 503);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> snsService.getHierarchyNextLevel(base + "_00010", Locale.GERMAN));
+        assertEquals("SNS_TIMEOUT", e.getMessage());
+
+        // the term is known to have no children, this answer needs no request
+        assertEquals(0, snsService.getHierarchyNextLevel(base + "_00051", Locale.GERMAN).length);
+    }
+
+    @Test
+    public void testUnknownTerm() {
+        assertNull(snsService.getHierarchyPathToTop(base + "_99999", Locale.GERMAN));
+        assertEquals(0, snsService.getHierarchyNextLevel(base + "_99999", Locale.GERMAN).length);
+    }
+
+    @Test
+    public void testTopTerms() {
+        TreeTerm[] topTerms = snsService.getHierarchyNextLevel(null, Locale.GERMAN);
+        assertEquals(2, topTerms.length);
+        TreeTerm topTerm = find(List.of(topTerms), "Stoffe und Materialien");
+        assertEquals(base + "_00060", topTerm.getId());
+        assertEquals("dummy", topTerm.getChildren().get(0).getId());
+        assertNull(topTerm.getParents());
+
+        // served from the graph
+        assertEquals(2, snsService.getHierarchyNextLevel(null, Locale.GERMAN).length);
+        assertEquals(1, server.getRequestCount());
+        // other language
+        snsService.getHierarchyNextLevel(null, Locale.ENGLISH);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testNextLevel() {
+        TreeTerm[] children = snsService.getHierarchyNextLevel(base + "_00060", Locale.GERMAN);
+        assertEquals(2, children.length);
+        TreeTerm child = find(List.of(children), "Chemie");
+        assertEquals(base + "_00060", child.getParents().get(0).getId());
+        assertEquals("Stoff", child.getChildren().get(0).getName());
+        assertNull(find(List.of(children), "Stickstoff").getChildren());
+
+        assertEquals(2, snsService.getHierarchyNextLevel(base + "_00060", Locale.GERMAN).length);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testNonCanonicalId() {
+        // the graph uses the ids of the SNS response, other forms of the id are mapped to them
+        TreeTerm[] children = snsService.getHierarchyNextLevel("_00060", Locale.GERMAN);
+        assertEquals(2, children.length);
+        assertEquals(base + "_00060", children[0].getParents().get(0).getId());
+        assertEquals(2, snsService.getHierarchyNextLevel("_00060", Locale.GERMAN).length);
+        assertEquals(1, server.getRequestCount());
+
+        String httpsId = base.replace("http://", "https://") + "_00010";
+        TreeTerm startTerm = snsService.getHierarchyPathToTop(httpsId, Locale.GERMAN);
+        assertEquals(base + "_00010", startTerm.getId());
+        assertEquals(2, startTerm.getParents().size());
+        int requests = server.getRequestCount();
+        assertEquals(2, snsService.getHierarchyPathToTop(httpsId, Locale.GERMAN).getParents().size());
+        assertEquals(requests, server.getRequestCount());
+    }
+
+    /** SNS delivers the terms of a level in any order. */
+    private static TreeTerm find(List<TreeTerm> terms, String name) {
+        for (TreeTerm term : terms) {
+            if (name.equals(term.getName())) {
+                return term;
+            }
+        }
+        return fail("No term " + name + " in " + terms);
+    }
+}
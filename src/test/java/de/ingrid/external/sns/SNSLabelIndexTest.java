@@ -0,0 +1,249 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.GazetteerService.QueryType;
+import de.ingrid.external.ThesaurusService.MatchingType;
+import de.ingrid.external.om.Location;
+import de.ingrid.external.om.Term;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SNSLabelIndexTest {
+
+    private final static Logger log = LogManager.getLogger(SNSLabelIndexTest.class);
+
+    private static final String[] WORDS = { "wasser", "luft", "boden", "abfall", "energie", "klima", "natur", "schutz",
+            "lärm", "strahlung", "chemikalie", "verkehr", "gewässer", "grund", "qualität", "belastung" };
+
+    @Test
+    public void testSearchTypes() {
+        SNSLabelIndex<String> index = createIndex();
+        index.merge();
+        assertSearchTypes(index);
+    }
+
+    @Test
+    public void testSearchTypesWithoutMerge() {
+        // labels are searched before they are merged into the sorted arrays
+        assertSearchTypes(createIndex());
+    }
+
+    private void assertSearchTypes(SNSLabelIndex<String> index) {
+        // exact match first, then alphabetical, concept matching several labels only once
+        assertEquals(Arrays.asList("luft", "luftbelastung", "luftreinhaltung"), index.search("Luft", "begins_with", 10));
+        assertEquals(Arrays.asList("luft", "luftbelastung"), index.search("Luft", "begins_with", 2));
+        assertEquals(Arrays.asList("wasser", "abwasser", "grundwasser", "wasserqualität"), index.search("WASSER", "contains", 10));
+        assertEquals(Arrays.asList("wasser", "abwasser", "grundwasser"), index.search("wasser", "ends_with", 10));
+        assertEquals(Collections.singletonList("wasser"), index.search("wasser", "exact", 10));
+        assertEquals(Arrays.asList("luftbelastung", "luftreinhaltung"), index.search("ng", "contains", 10));
+        assertEquals(Collections.emptyList(), index.search("xyz", "contains", 10));
+        assertEquals(Collections.emptyList(), index.search("luftx", "begins_with", 10));
+    }
+
+    private SNSLabelIndex<String> createIndex() {
+        SNSLabelIndex<String> index = new SNSLabelIndex<>();
+        for (String label : new String[] { "Wasser", "Abwasser", "Grundwasser", "Wasserqualität", "Luft", "Luftreinhaltung" }) {
+            index.add(label, label.toLowerCase(), Collections.singletonList(label));
+        }
+        index.add("Luftbelastung", "luftbelastung", Arrays.asList("Luftbelastung", "Luftverschmutzung"));
+        return index;
+    }
+
+    @Test
+    public void testReplaceConcept() {
+        SNSLabelIndex<String> index = new SNSLabelIndex<>();
+        index.add("1", "old", Collections.singletonList("Abgas"));
+        index.merge();
+        index.add("1", "new", Collections.singletonList("Abgase"));
+        assertEquals(Collections.singletonList("new"), index.search("abga", "begins_with", 10));
+        assertEquals(Collections.emptyList(), index.search("abgas", "exact", 10));
+
+        index.merge();
+        assertEquals(1, index.size());
+        assertEquals("new", index.get("1"));
+        assertEquals(Collections.singletonList("new"), index.search("gase", "contains", 10));
+    }
+
+    @Test
+    public void testComplete() {
+        SNSLabelIndex<String> index = new SNSLabelIndex<>();
+        index.markComplete("begins_with", "Was");
+        assertTrue(index.isComplete("begins_with", "wasser"));
+        assertTrue(index.isComplete("exact", "wasser"));
+        assertFalse(index.isComplete("begins_with", "wa"));
+        assertFalse(index.isComplete("contains", "wasser"));
+        assertFalse(index.isComplete("ends_with", "wasser"));
+
+        index.markComplete("contains", "ass");
+        assertTrue(index.isComplete("contains", "wasser"));
+        assertTrue(index.isComplete("ends_with", "wasser"));
+        assertTrue(index.isComplete("begins_with", "asse"));
+
+        index.setComplete(true);
+        assertTrue(index.isComplete("contains", "luft"));
+    }
+
+    @Test
+    public void testMemoryPerMillionLabels() {
+        int numLabels = 1000000;
+        Random random = new Random(42);
+        SNSLabelIndex<Integer> index = new SNSLabelIndex<>();
+        long labelChars = 0;
+        long idChars = 0;
+        for (int i = 0; i < numLabels; i++) {
+            String label = WORDS[random.nextInt(WORDS.length)] + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            String id = String.valueOf(i);
+            labelChars += label.length();
+            idChars += id.length();
+            index.add(id, i, Collections.singletonList(label));
+        }
+        index.merge();
+
+        long bytes = index.getMemoryUsage();
+        // as objects every label and id is a String (56 bytes + 2 bytes per char) and the concepts
+        // are found by id in a HashMap (about 48 bytes per entry)
+        long objectBytes = numLabels * (56L + 56L + 48L) + 2 * (labelChars + idChars);
+        log.info("{} labels ({} chars on average): {} bytes per label in index, {} bytes per label as objects",
+                numLabels, labelChars / numLabels, bytes / numLabels, objectBytes / numLabels);
+        assertTrue(bytes < objectBytes, "index takes more memory than the plain labels: " + bytes);
+
+        // typeahead walks only a small part of the postings
+        String[] queries = { "wasserl", "luftbod", "klimaschutz 1", "energielärm 99" };
+        String[] types = { "begins_with", "contains" };
+        for (String query : queries) {
+            for (String type : types) {
+                long postingsRead = index.getPostingsRead();
+                List<Integer> result = index.search(query, type, SNSClient.NUM_SEARCH_RESULTS);
+                assertFalse(result.isEmpty(), query + " " + type);
+                postingsRead = index.getPostingsRead() - postingsRead;
+                assertTrue(postingsRead < numLabels / 100, query + " " + type + " walks " + postingsRead + " postings");
+            }
+        }
+    }
+
+    @Test
+    public void testTypeaheadFromSearchResults() throws Exception {
+        try (SNSStubServer server = new SNSStubServer()) {
+            server.respond("/umthes/search.rdf", "/stub/search.rdf");
+            SNSService snsService = new SNSService();
+            snsService.init(server.createSettings());
+
+            Term[] terms = snsService.findTermsFromQueryTerm("lu", MatchingType.BEGINS_WITH, false, Locale.GERMAN);
+            assertEquals(3, terms.length);
+            assertEquals(1, server.getRequestCount());
+
+            // result of "lu" was complete, refined queries are answered from the label index,
+            // ordered by the index (exact match first, then by the matching label) and not like the response
+            terms = snsService.findTermsFromQueryTerm("luft", MatchingType.BEGINS_WITH, false, Locale.GERMAN);
+            assertEquals(server.getUrl("umthes") + "_00007", terms[0].getId());
+            assertEquals("Luft", terms[0].getName());
+            // found by its altLabel "Luftbelastung"
+            assertEquals("Luftverschmutzung", terms[1].getName());
+            assertEquals("Luftreinhaltung", terms[2].getName());
+            assertEquals(3, terms.length);
+            terms = snsService.findTermsFromQueryTerm("luftbel", MatchingType.BEGINS_WITH, false, Locale.GERMAN);
+            assertEquals(1, terms.length);
+            assertEquals("Luftverschmutzung", terms[0].getName());
+            assertEquals(0, snsService.findTermsFromQueryTerm("Luftx*", MatchingType.EXACT, false, Locale.GERMAN).length);
+            assertEquals(1, server.getRequestCount());
+
+            // not covered by the first result
+            snsService.findTermsFromQueryTerm("uft", MatchingType.CONTAINS, false, Locale.GERMAN);
+            snsService.findTermsFromQueryTerm("luft", MatchingType.BEGINS_WITH, false, Locale.ENGLISH);
+            assertEquals(3, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testTypeaheadQueryWithoutWildcards() throws Exception {
+        try (SNSStubServer server = new SNSStubServer()) {
+            // the result has the query as label
+            server.respond("/umthes/search.rdf", "/stub/search-query.rdf");
+            SNSService snsService = new SNSService();
+            snsService.init(server.createSettings());
+
+            // SNS gets the query without wildcards like the label index
+            Term[] terms = snsService.findTermsFromQueryTerm("Wasser*", MatchingType.EXACT, false, Locale.GERMAN);
+            assertEquals("Wasser", terms[0].getName());
+            terms = snsService.findTermsFromQueryTerm("wasser", MatchingType.BEGINS_WITH, false, Locale.GERMAN);
+            assertEquals("Wasser", terms[0].getName());
+            assertEquals(1, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testCompleteQueriesAreBounded() {
+        SNSLabelIndex<String> index = new SNSLabelIndex<>();
+        index.markComplete("begins_with", "wasser");
+        for (int i = 0; i < 2000; i++) {
+            index.markComplete("exact", "begriff" + i);
+            // recently used queries are kept
+            assertTrue(index.isComplete("begins_with", "wasserqualität"));
+        }
+        assertTrue(index.isComplete("exact", "begriff1999"));
+        assertFalse(index.isComplete("exact", "begriff0"));
+    }
+
+    @Test
+    public void testTypeaheadLocations() throws Exception {
+        try (SNSStubServer server = new SNSStubServer()) {
+            server.respond("/gazetteer/search.rdf", "/stub/location-search.rdf");
+            SNSService snsService = new SNSService();
+            snsService.init(server.createSettings());
+
+            Location[] locations = snsService.findLocationsFromQueryTerm("frank", QueryType.ALL_LOCATIONS,
+                    de.ingrid.external.GazetteerService.MatchingType.BEGINS_WITH, Locale.GERMAN);
+            assertEquals(2, locations.length);
+
+            locations = snsService.findLocationsFromQueryTerm("frankfurt", QueryType.ONLY_ADMINISTRATIVE_LOCATIONS,
+                    de.ingrid.external.GazetteerService.MatchingType.BEGINS_WITH, Locale.GERMAN);
+            assertEquals(1, locations.length);
+            assertEquals("Frankfurt am Main", locations[0].getName());
+            assertEquals("06412000", locations[0].getNativeKey());
+            assertEquals(1, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testLabelIndexDisabled() throws Exception {
+        try (SNSStubServer server = new SNSStubServer()) {
+            server.respond("/umthes/search.rdf", "/stub/search.rdf");
+            SNSService snsService = new SNSService();
+            snsService.init(server.createSettings("sns.labelIndex.maxLabels=0"));
+
+            snsService.findTermsFromQueryTerm("lu", MatchingType.BEGINS_WITH, false, Locale.GERMAN);
+            snsService.findTermsFromQueryTerm("luft", MatchingType.BEGINS_WITH, false, Locale.GERMAN);
+            assertEquals(2, server.getRequestCount());
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.GazetteerService.QueryType;
+import de.ingrid.external.ThesaurusService.MatchingType;
+import de.ingrid.external.om.Location;
+import de.ingrid.external.om.RelatedTerm;
+import de.ingrid.external.om.Term;
+import de.ingrid.external.om.Term.TermType;
+import de.ingrid.external.om.TreeTerm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SNSLocalServiceTest {
+
+    private static final String THESAURUS = "http://test.sns/umthes/";
+    private static final String GAZETTEER = "http://test.sns/gazetteer/";
+
+    private SNSStubServer server;
+    private SNSService snsService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // no responses registered, every request to SNS fails
+        server = new SNSStubServer();
+        snsService = new SNSService();
+        snsService.init(server.createSettings(
+                "sns.mode=local",
+                "sns.local.thesaurus.dump=" + getDump("thesaurus.ttl"),
+                "sns.local.gazetteer.dump=" + getDump("gazetteer.ttl")));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testGetTerm() {
+        Term term = snsService.getTerm(THESAURUS + "_00004", Locale.GERMAN);
+        assertEquals(THESAURUS + "_00004", term.getId());
+        assertEquals("Luftverschmutzung", term.getName());
+        assertEquals(TermType.DESCRIPTOR, term.getType());
+        assertEquals("GEMETID242", term.getAlternateId());
+        assertEquals("air pollution", snsService.getTerm(THESAURUS + "_00004", Locale.ENGLISH).getName());
+
+        assertNull(snsService.getTerm(THESAURUS + "_99999", Locale.GERMAN));
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void testFindTermsFromQueryTerm() {
+        // exact match first, then alphabetical, concept found by altLabel only once
+        assertIds(snsService.findTermsFromQueryTerm("luft", MatchingType.BEGINS_WITH, false, Locale.GERMAN),
+                "_00007", "_00004", "_00003");
+        assertIds(snsService.findTermsFromQueryTerm("Wasser", MatchingType.CONTAINS, false, Locale.GERMAN),
+                "_00002", "_00006");
+        assertIds(snsService.findTermsFromQueryTerm("ABGAS", MatchingType.EXACT, false, Locale.GERMAN),
+                "_00005");
+        assertIds(snsService.findTermsFromQueryTerm("*verschmutzung", MatchingType.EXACT, false, Locale.GERMAN),
+                "_00004");
+        assertIds(snsService.findTermsFromQueryTerm("air", MatchingType.BEGINS_WITH, false, Locale.ENGLISH),
+                "_00007", "_00004", "_00003");
+        assertIds(snsService.findTermsFromQueryTerm("Luftb", MatchingType.EXACT, false, Locale.GERMAN));
+        // the concept scheme is no concept
+        assertIds(snsService.findTermsFromQueryTerm("Testthesaurus", MatchingType.EXACT, false, Locale.GERMAN));
+        assertNull(snsService.getTerm(THESAURUS + "scheme", Locale.GERMAN));
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void testGetHierarchyNextLevel() {
+        // top concepts given by skos:hasTopConcept and skos:topConceptOf
+        TreeTerm[] topTerms = snsService.getHierarchyNextLevel(null, Locale.GERMAN);
+        assertIds(topTerms, "_00001", "_00002");
+        assertEquals("Umwelt", topTerms[0].getName());
+        assertNull(topTerms[0].getParents());
+        assertEquals(1, topTerms[0].getChildren().size());
+
+        // children given by skos:narrower of the parent and skos:broader of the child
+        TreeTerm[] children = snsService.getHierarchyNextLevel(THESAURUS + "_00001", Locale.GERMAN);
+        assertIds(children, "_00005", "_00003", "_00007");
+        assertEquals(THESAURUS + "_00001", children[1].getParents().get(0).getId());
+        assertEquals(1, children[1].getChildren().size());
+        assertEquals("Luftverschmutzung", children[1].getChildren().get(0).getName());
+        assertNull(children[0].getChildren());
+
+        assertEquals(0, snsService.getHierarchyNextLevel(THESAURUS + "_00004", Locale.GERMAN).length);
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void testGetHierarchyPathToTop() {
+        TreeTerm startTerm = snsService.getHierarchyPathToTop(THESAURUS + "_00004", Locale.GERMAN);
+        assertEquals("Luftverschmutzung", startTerm.getName());
+
+        TreeTerm parent = startTerm.getParents().get(0);
+        assertEquals("Luftreinhaltung", parent.getName());
+        assertEquals(startTerm, parent.getChildren().get(0));
+        TreeTerm top = parent.getParents().get(0);
+        assertEquals("Umwelt", top.getName());
+        assertNull(top.getParents());
+
+        assertNull(snsService.getHierarchyPathToTop(THESAURUS + "_99999", Locale.GERMAN));
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void testGetRelatedTermsFromTerm() {
+        RelatedTerm[] related = snsService.getRelatedTermsFromTerm(THESAURUS + "_00004", Locale.GERMAN);
+        assertEquals(3, related.length);
+        assertEquals("Luftbelastung", related[0].getName());
+        assertEquals(TermType.NON_DESCRIPTOR, related[0].getType());
+        assertEquals(THESAURUS + "_00003", related[1].getId());
+        assertEquals(RelatedTerm.RelationType.PARENT, related[1].getRelationType());
+        assertEquals(THESAURUS + "_00005", related[2].getId());
+        assertEquals(RelatedTerm.RelationType.RELATIVE, related[2].getRelationType());
+    }
+
+    @Test
+    public void testGetLocation() {
+        Location location = snsService.getLocation(GAZETTEER + "_06412000", Locale.GERMAN);
+        assertEquals("Frankfurt am Main", location.getName());
+        assertEquals("-location-admin-use6-", location.getTypeId());
+        assertEquals("Gemeinde", location.getTypeName());
+        assertEquals("06412000", location.getNativeKey());
+        assertFalse(location.getIsExpired());
+        assertEquals(8.4673764f, location.getBoundingBox()[0]);
+        assertEquals(50.22758f, location.getBoundingBox()[3]);
+
+        location = snsService.getLocation(GAZETTEER + "_06412999", Locale.GERMAN);
+        assertTrue(location.getIsExpired());
+        assertEquals(GAZETTEER + "_06412000", location.getSuccessorIds()[0]);
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void testFindLocationsFromQueryTerm() {
+        // expired locations are removed
+        Location[] locations = snsService.findLocationsFromQueryTerm("Frankfurt", QueryType.ALL_LOCATIONS,
+                de.ingrid.external.GazetteerService.MatchingType.BEGINS_WITH, Locale.GERMAN);
+        assertIds(locations, "_06412000", "_NATURE01");
+
+        locations = snsService.findLocationsFromQueryTerm("Frankfurt", QueryType.ONLY_ADMINISTRATIVE_LOCATIONS,
+                de.ingrid.external.GazetteerService.MatchingType.BEGINS_WITH, Locale.GERMAN);
+        assertIds(locations, "_06412000");
+
+        locations = snsService.getRelatedLocationsFromLocation(GAZETTEER + "_06412000", true, Locale.GERMAN);
+        assertIds(locations, "_06412000", "_06000000", "_NATURE01");
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void testServiceWithoutDumpIsRemote() throws Exception {
+        server.respond("/gazetteer/de/concepts/", "/stub/location.rdf");
+        SNSService service = new SNSService();
+        service.init(server.createSettings("sns.mode=local", "sns.local.thesaurus.dump=" + getDump("thesaurus.ttl")));
+
+        assertEquals("Umwelt", service.getTerm(THESAURUS + "_00001", Locale.GERMAN).getName());
+        assertEquals(0, server.getRequestCount());
+        assertEquals("Ort _06412000", service.getLocation(server.getUrl("gazetteer") + "_06412000", Locale.GERMAN).getName());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testTextAnalysisIsRemote() throws Exception {
+        // the dump cannot analyze texts, SNS is requested
+        server.respond("/umthes/de/autoclassify/", "/stub/classify.rdf");
+        assertTrue(snsService.getTermsFromText("Wasser und Luft", 100, true, Locale.GERMAN).length > 0);
+        assertTrue(server.getRequestCount() > 0);
+    }
+
+    @Test
+    public void testRefreshDelta(@TempDir Path dir) throws Exception {
+        Path dump = dir.resolve("thesaurus.ttl");
+        Path delta = dir.resolve("thesaurus-delta.ttl");
+        Files.copy(Paths.get(getDump("thesaurus.ttl")), dump);
+        Files.write(delta, new byte[0]);
+        SNSService service = new SNSService();
+        service.init(server.createSettings("sns.mode=local", "sns.local.thesaurus.dump=" + dump + "," + delta));
+        assertEquals("Abgas", service.getTerm(THESAURUS + "_00005", Locale.GERMAN).getName());
+        assertEquals(0, service.refreshLocalDumps());
+
+        // change concepts and add a new one, only the delta is parsed again
+        Files.write(delta, ("@prefix skos: <http://www.w3.org/2004/02/skos/core#> .\n"
+                + "<" + THESAURUS + "_00005> a skos:Concept ; skos:prefLabel \"Abgase\"@de .\n"
+                + "<" + THESAURUS + "_00004> skos:altLabel \"Luftverunreinigung\"@de .\n"
+                + "<" + THESAURUS + "scheme> a skos:ConceptScheme ; skos:hasTopConcept <" + THESAURUS + "_00007> .\n"
+                + "<" + THESAURUS + "_00008> a skos:Concept ; skos:prefLabel \"Grundwasser\"@de ; skos:broader <" + THESAURUS + "_00002> .\n")
+                .getBytes(StandardCharsets.UTF_8));
+        delta.toFile().setLastModified(System.currentTimeMillis() + 10000);
+        assertEquals(1, service.refreshLocalDumps());
+
+        assertEquals("Abgase", service.getTerm(THESAURUS + "_00005", Locale.GERMAN).getName());
+        // properties not stated in the delta are kept
+        assertEquals("exhaust gas", service.getTerm(THESAURUS + "_00005", Locale.ENGLISH).getName());
+        assertEquals("Luftverschmutzung", service.getTerm(THESAURUS + "_00004", Locale.GERMAN).getName());
+        assertIds(service.findTermsFromQueryTerm("Luftverunreinigung", MatchingType.EXACT, false, Locale.GERMAN), "_00004");
+        assertIds(service.findTermsFromQueryTerm("Luftbelastung", MatchingType.EXACT, false, Locale.GERMAN));
+        assertEquals(3, service.getRelatedTermsFromTerm(THESAURUS + "_00004", Locale.GERMAN).length);
+        // a concept only referenced as top concept keeps its properties
+        assertEquals("Luft", service.getTerm(THESAURUS + "_00007", Locale.GERMAN).getName());
+        assertIds(service.getHierarchyNextLevel(null, Locale.GERMAN), "_00001", "_00002", "_00007");
+        assertIds(service.getHierarchyNextLevel(THESAURUS + "_00002", Locale.GERMAN), "_00006", "_00008");
+        assertIds(service.findTermsFromQueryTerm("grund", MatchingType.BEGINS_WITH, false, Locale.GERMAN), "_00008");
+        // relation from the base dump is kept
+        assertEquals(THESAURUS + "_00001", service.getHierarchyPathToTop(THESAURUS + "_00005", Locale.GERMAN).getParents().get(0).getId());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void testRefreshThreadIsReplacedOnInit() throws Exception {
+        SNSService service = new SNSService();
+        for (int i = 0; i < 3; i++) {
+            service.init(server.createSettings("sns.mode=local", "sns.local.thesaurus.dump=" + getDump("thesaurus.ttl"),
+                    "sns.local.refreshInterval=60"));
+        }
+        // the threads of the former inits end
+        for (int i = 0; i < 50 && countRefreshThreads() > 1; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, countRefreshThreads());
+
+        service.init(server.createSettings());
+        for (int i = 0; i < 50 && countRefreshThreads() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, countRefreshThreads());
+    }
+
+    private static long countRefreshThreads() {
+        return Thread.getAllStackTraces().keySet().stream().filter(t -> "sns-local-refresh".equals(t.getName())).count();
+    }
+
+    private static String getDump(String name) throws Exception {
+        return new File(SNSLocalServiceTest.class.getResource("/skos/" + name).toURI()).getAbsolutePath();
+    }
+
+    private static void assertIds(Object[] results, String... expectedIds) {
+        List<String> ids = new ArrayList<>();
+        for (Object result : results) {
+            ids.add(result instanceof Term ? ((Term) result).getId() : ((Location) result).getId());
+        }
+        List<String> expected = new ArrayList<>();
+        for (String id : expectedIds) {
+            expected.add((results instanceof Location[] ? GAZETTEER : THESAURUS) + id);
+        }
+        assertEquals(expected, ids);
+    }
+}
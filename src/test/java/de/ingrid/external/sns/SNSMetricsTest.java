@@ -0,0 +1,150 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.sns.SNSMetrics.Phase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SNSMetricsTest {
+
+    private static final String TERM_ID = "https://sns.uba.de/umthes/_00049251";
+
+    private SNSStubServer server;
+    private SNSService snsService;
+    private SNSMetricsRegistry metrics;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new SNSStubServer();
+        server.respond("/umthes/de/concepts/", "/stub/recorded-term.rdf");
+        server.respond("/umthes/de/hierarchy/_00010", "/stub/hierarchy-up.rdf");
+        server.respond("/umthes/de/hierarchy/_00050", "/stub/hierarchy-top.rdf");
+        server.respond("/umthes/de/hierarchy/_00051", "/stub/hierarchy-top.rdf");
+        snsService = new SNSService();
+        metrics = new SNSMetricsRegistry();
+        snsService.setMetrics(metrics);
+        snsService.init(server.createSettings());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testPhasesOfFetchedTerm() throws Exception {
+        assertEquals("Wasser", snsService.getTerm(TERM_ID, Locale.GERMAN).getName());
+
+        assertEquals(1, metrics.getTimer(SNSMetrics.GET_TERM, Phase.NETWORK).getCount());
+        assertEquals(1, metrics.getTimer(SNSMetrics.GET_TERM, Phase.PARSE).getCount());
+        assertEquals(1, metrics.getTimer(SNSMetrics.GET_TERM, Phase.MAP).getCount());
+        assertTrue(metrics.getTimer(SNSMetrics.GET_TERM, Phase.NETWORK).getTotal() > 0);
+        assertTrue(metrics.getTimer(SNSMetrics.GET_TERM, Phase.PARSE).getTotal() > 0);
+        assertEquals(readSize("/stub/recorded-term.rdf"), metrics.getPayload(SNSMetrics.GET_TERM).getTotal());
+        assertEquals(0, metrics.getErrorCount(SNSMetrics.GET_TERM));
+
+        // served from the concept cache, no call
+        snsService.getTerm(TERM_ID, Locale.GERMAN);
+        assertEquals(1, metrics.getTimer(SNSMetrics.GET_TERM, Phase.NETWORK).getCount());
+
+        // related terms are mapped from another call
+        snsService.getRelatedTermsFromTerm(TERM_ID, Locale.GERMAN);
+        assertEquals(2, metrics.getTimer(SNSMetrics.GET_TERM, Phase.NETWORK).getCount());
+        assertEquals(2, metrics.getTimer(SNSMetrics.GET_TERM, Phase.MAP).getCount());
+        assertEquals(2 * readSize("/stub/recorded-term.rdf"), metrics.getPayload(SNSMetrics.GET_TERM).getTotal());
+    }
+
+    @Test
+    public void testNetworkTimeIncludesLatency() {
+        server.setDelay(200);
+        snsService.getTerm(TERM_ID, Locale.GERMAN);
+        assertTrue(metrics.getTimer(SNSMetrics.GET_TERM, Phase.NETWORK).getMax() >= 200000000L);
+        assertTrue(metrics.getTimer(SNSMetrics.GET_TERM, Phase.PARSE).getMax() < 200000000L);
+    }
+
+    @Test
+    public void testNotFoundIsNoError() {
+        server.fail("/umthes/de/concepts/", 404);
+        assertNull(snsService.getTerm(TERM_ID, Locale.GERMAN));
+        assertEquals(0, metrics.getErrorCount(SNSMetrics.GET_TERM));
+        assertEquals(0, metrics.getTimeoutCount(SNSMetrics.GET_TERM));
+    }
+
+    @Test
+    public void testErrorCount() {
+        server.fail("/umthes/de/concepts/", 500);
+        assertNull(snsService.getTerm(TERM_ID, Locale.GERMAN));
+        assertEquals(1, metrics.getErrorCount(SNSMetrics.GET_TERM));
+        assertEquals(0, metrics.getTimer(SNSMetrics.GET_TERM, Phase.MAP).getCount());
+    }
+
+    @Test
+    public void testTimeoutCount() throws Exception {
+        snsService.init(server.createSettings("sns.timeout=100"));
+        server.setDelay(500);
+        assertNull(snsService.getTerm(TERM_ID, Locale.GERMAN));
+        assertEquals(1, metrics.getTimeoutCount(SNSMetrics.GET_TERM));
+        assertEquals(0, metrics.getErrorCount(SNSMetrics.GET_TERM));
+    }
+
+    @Test
+    public void testHierarchy() {
+        snsService.getHierarchyPathToTop(server.getUrl("umthes") + "_00010", Locale.GERMAN);
+        assertEquals(3, metrics.getTimer(SNSMetrics.HIERARCHY, Phase.NETWORK).getCount());
+        assertEquals(3, metrics.getTimer(SNSMetrics.HIERARCHY, Phase.MAP).getCount());
+        assertTrue(metrics.getAll().containsKey("hierarchy.payload"));
+    }
+
+    @Test
+    public void testNoMetrics() {
+        snsService.setMetrics(SNSMetrics.NOOP);
+        snsService.getTerm(TERM_ID, Locale.GERMAN);
+        assertTrue(metrics.getAll().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> snsService.setMetrics(null));
+    }
+
+    @Test
+    public void testStatistics() {
+        SNSMetricsRegistry registry = new SNSMetricsRegistry();
+        registry.recordPayload("test", 10);
+        registry.recordPayload("test", 30);
+        registry.recordPayload("test", 20);
+        assertEquals(3, registry.getPayload("test").getCount());
+        assertEquals(60, registry.getPayload("test").getTotal());
+        assertEquals(30, registry.getPayload("test").getMax());
+        assertEquals(0, registry.getPayload("other").getCount());
+    }
+
+    private static long readSize(String resource) throws Exception {
+        try (InputStream in = SNSMetricsTest.class.getResourceAsStream(resource)) {
+            return in.readAllBytes().length;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ * 
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.FullClassifyService.FilterType;
+import de.ingrid.external.om.FullClassifyResult;
+import de.ingrid.external.om.Term;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SNSParallelResolverTest {
+
+    private final static Logger log = LogManager.getLogger(SNSParallelResolverTest.class);
+
+    private SNSStubServer server;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new SNSStubServer();
+        server.respond("/umthes/de/autoclassify/", "/stub/classify.rdf");
+        server.respond("/umthes/de/concepts/", "/stub/concept.rdf");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testResultsKeepOrder() {
+        SNSParallelResolver resolver = new SNSParallelResolver(4, 0);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int value = i;
+            // later tasks finish first
+            tasks.add(() -> {
+                Thread.sleep(40 - value * 2);
+                return value;
+            });
+        }
+        List<Integer> results = resolver.resolveAll(tasks);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, results.get(i));
+        }
+    }
+
+    @Test
+    public void testFailedTaskHasNoResult() {
+        SNSParallelResolver resolver = new SNSParallelResolver(2, 0);
+        List<Callable<String>> tasks = Arrays.asList(() -> "a", () -> {
+            throw new IllegalStateException("test");
+        }, () -> "c");
+        assertEquals(Arrays.asList("a", null, "c"), resolver.resolveAll(tasks));
+    }
+
+    @Test
+    public void testUnavailableServiceFailsCall() {
+        for (int parallelism : new int[] { 1, 2 }) {
+            SNSParallelResolver resolver = new SNSParallelResolver(parallelism, 0);
+            List<Callable<String>> tasks = Arrays.asList(() -> "a", () -> {
+                throw new RuntimeException("SNS_TIMEOUT");
+            }, () -> "c");
+            RuntimeException e = assertThrows(RuntimeException.class, () -> resolver.resolveAll(tasks));
+            assertEquals("SNS_TIMEOUT", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testBackgroundTaskNeverRunsOnCaller() throws Exception {
+        SNSParallelResolver resolver = new SNSParallelResolver(1, 0);
+        Thread caller = Thread.currentThread();
+        for (int i = 0; i < 200; i++) {
+            CountDownLatch release = new CountDownLatch(1);
+            Future<Boolean> busy;
+            // the thread may still be finishing the task of the former run
+            while ((busy = resolver.submit(() -> release.await(5, TimeUnit.SECONDS))) == null) {
+                Thread.sleep(1);
+            }
+            // submitted right after the first task, when the only thread may not be counted as active yet
+            Future<Thread> background = resolver.submit(Thread::currentThread);
+            release.countDown();
+            if (background != null) {
+                assertNotSame(caller, background.get(5, TimeUnit.SECONDS));
+            }
+            busy.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testDeadlineReturnsPartialResults() {
+        SNSParallelResolver resolver = new SNSParallelResolver(2, 300);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            tasks.add(() -> {
+                Thread.sleep(value < 2 ? 10 : 1000);
+                return value;
+            });
+        }
+        long start = System.currentTimeMillis();
+        List<Integer> results = resolver.resolveAll(tasks);
+        assertTrue(System.currentTimeMillis() - start < 900, "resolver must return after the deadline");
+        assertEquals(10, results.size());
+        assertEquals(0, results.get(0));
+        assertEquals(1, results.get(1));
+        for (int i = 2; i < 10; i++) {
+            assertNull(results.get(i));
+        }
+    }
+
+    @Test
+    public void testThreadsAreBoundedForConcurrentCalls() throws Exception {
+        SNSParallelResolver resolver = new SNSParallelResolver(4, 0);
+        Set<String> poolThreads = ConcurrentHashMap.newKeySet();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int value = i;
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                if (Thread.currentThread().getName().startsWith("sns-resolver-")) {
+                    poolThreads.add(Thread.currentThread().getName());
+                }
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return value;
+            });
+        }
+
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<List<Integer>>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                futures.add(executor.submit(() -> resolver.resolveAll(tasks)));
+            }
+            for (Future<List<Integer>> future : futures) {
+                assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7), future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // callers execute tasks themselves when all threads of the pool are busy
+        assertTrue(poolThreads.size() <= 4, "pool must not grow above the parallelism: " + poolThreads.size());
+        assertTrue(maxRunning.get() <= 4 + callers);
+    }
+
+    /**
+     * Classifies a text with 20 hits, each of them fetched separately, with and without parallel requests.
+     */
+    @Test
+    public void testAutoClassifyLatency() throws Exception {
+        server.setDelay(50);
+
+        SNSService sequentialService = new SNSService();
+        sequentialService.init(server.createSettings("sns.parallelism=1", "sns.cache.maxEntries=0"));
+        SNSService parallelService = new SNSService();
+        parallelService.init(server.createSettings("sns.parallelism=8", "sns.cache.maxEntries=0"));
+
+        // warm up
+        parallelService.autoClassifyText("Wasser", 100, false, FilterType.ONLY_TERMS, Locale.GERMAN);
+
+        long start = System.nanoTime();
+        FullClassifyResult sequential = sequentialService.autoClassifyText("Wasser", 100, false, FilterType.ONLY_TERMS, Locale.GERMAN);
+        long sequentialTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        FullClassifyResult parallel = parallelService.autoClassifyText("Wasser", 100, false, FilterType.ONLY_TERMS, Locale.GERMAN);
+        long parallelTime = System.nanoTime() - start;
+
+        log.info("autoClassifyText with 20 hits: sequential = {}ms, parallel = {}ms", sequentialTime / 1000000, parallelTime / 1000000);
+
+        assertEquals(20, sequential.getTerms().size());
+        assertEquals(ids(sequential.getTerms()), ids(parallel.getTerms()));
+        assertTrue(parallelTime * 2 < sequentialTime, "parallel resolution must be faster");
+    }
+
+    @Test
+    public void testAutoClassifyDeadline() throws Exception {
+        server.setDelay(200);
+
+        SNSService snsService = new SNSService();
+        snsService.init(server.createSettings("sns.parallelism=2", "sns.requestDeadline=1000", "sns.cache.maxEntries=0"));
+
+        long start = System.currentTimeMillis();
+        FullClassifyResult result = snsService.autoClassifyText("Wasser", 100, false, FilterType.ONLY_TERMS, Locale.GERMAN);
+        long time = System.currentTimeMillis() - start;
+
+        // classify request plus some of the 20 hits, not all of them
+        assertTrue(time < 2500, "classification must return partial results after the deadline");
+        assertTrue(result.getTerms().size() < 20);
+    }
+
+    private List<String> ids(List<Term> terms) {
+        return terms.stream().map(Term::getId).collect(Collectors.toList());
+    }
+}
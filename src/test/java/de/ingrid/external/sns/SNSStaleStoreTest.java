@@ -0,0 +1,243 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.om.Event;
+import de.ingrid.external.om.Location;
+import de.ingrid.external.om.RelatedTerm;
+import de.ingrid.external.om.RelatedTerm.RelationType;
+import de.ingrid.external.om.Term;
+import de.ingrid.external.om.Term.TermType;
+import de.ingrid.external.om.impl.EventImpl;
+import de.ingrid.external.om.impl.LinkImpl;
+import de.ingrid.external.om.impl.LocationImpl;
+import de.ingrid.external.om.impl.RelatedTermImpl;
+import de.ingrid.external.om.impl.TermImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SNSStaleStoreTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void testCodecs() throws Exception {
+        File file = new File( tempDir, "stale.dat" );
+        try (SNSStaleStore store = new SNSStaleStore( file )) {
+            Term term = new TermImpl( "http://test.sns/umthes/_00001", "Wasser", TermType.DESCRIPTOR );
+            term.setAlternateId( "GEMETID9242" );
+            store.put( "term", SNSStaleStore.TERMS, List.of( term ) );
+
+            RelatedTerm relatedTerm = new RelatedTermImpl();
+            relatedTerm.setId( "http://test.sns/umthes/_00002" );
+            relatedTerm.setName( "Gewässer" );
+            relatedTerm.setType( TermType.NODE_LABEL );
+            relatedTerm.setRelationType( RelationType.PARENT );
+            store.put( "related", SNSStaleStore.RELATED_TERMS, List.of( relatedTerm ) );
+
+            Location location = new LocationImpl();
+            location.setId( "http://test.sns/gazetteer/_06412000" );
+            location.setName( "Frankfurt am Main" );
+            location.setNativeKey( "06412000" );
+            location.setBoundingBox( 8.47f, 50.01f, 8.8f, 50.23f );
+            location.setIsExpired( true );
+            location.setExpiredDate( "2020-01-01" );
+            location.setSuccessorIds( new String[] { "http://test.sns/gazetteer/_06412001" } );
+            store.put( "location", SNSStaleStore.LOCATIONS, List.of( location ) );
+
+            Event event = new EventImpl();
+            event.setId( "http://test.sns/chronik/_1" );
+            event.setTitle( "Tschernobyl" );
+            event.setTimeAt( new Date( 514944000000L ) );
+            LinkImpl link = new LinkImpl();
+            link.setTitle( "Wikipedia" );
+            link.setLinkAddress( "https://de.wikipedia.org/wiki/Tschernobyl" );
+            event.addLink( link );
+            store.put( "event", SNSStaleStore.EVENTS, List.of( event ) );
+        }
+
+        try (SNSStaleStore store = new SNSStaleStore( file )) {
+            assertEquals( 4, store.size() );
+
+            Term term = store.get( "term", SNSStaleStore.TERMS ).get( 0 );
+            assertEquals( "Wasser", term.getName() );
+            assertEquals( TermType.DESCRIPTOR, term.getType() );
+            assertEquals( "GEMETID9242", term.getAlternateId() );
+            assertNull( term.getAlternateName() );
+
+            RelatedTerm relatedTerm = store.get( "related", SNSStaleStore.RELATED_TERMS ).get( 0 );
+            assertEquals( "Gewässer", relatedTerm.getName() );
+            assertEquals( RelationType.PARENT, relatedTerm.getRelationType() );
+
+            Location location = store.get( "location", SNSStaleStore.LOCATIONS ).get( 0 );
+            assertEquals( "06412000", location.getNativeKey() );
+            assertArrayEquals( new float[] { 8.47f, 50.01f, 8.8f, 50.23f }, location.getBoundingBox() );
+            assertTrue( location.getIsExpired() );
+            assertArrayEquals( new String[] { "http://test.sns/gazetteer/_06412001" }, location.getSuccessorIds() );
+
+            Event event = store.get( "event", SNSStaleStore.EVENTS ).get( 0 );
+            assertEquals( "Tschernobyl", event.getTitle() );
+            assertEquals( new Date( 514944000000L ), event.getTimeAt() );
+            assertNull( event.getTimeRangeFrom() );
+            assertEquals( 1, event.getLinks().size() );
+            assertEquals( "Wikipedia", event.getLinks().get( 0 ).getTitle() );
+
+            assertNull( store.get( "unknown", SNSStaleStore.TERMS ) );
+        }
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+        File file = new File( tempDir, "stale.dat" );
+        try (SNSStaleStore store = new SNSStaleStore( file )) {
+            store.put( "key", SNSStaleStore.TERMS, List.of( createTerm( "Wasser" ) ) );
+            long size = store.getFileSize();
+
+            // unchanged result is not written again
+            store.put( "key", SNSStaleStore.TERMS, List.of( createTerm( "Wasser" ) ) );
+            assertEquals( size, store.getFileSize() );
+
+            store.put( "key", SNSStaleStore.TERMS, List.of( createTerm( "Wasser" ), createTerm( "Abwasser" ) ) );
+            assertTrue( store.getFileSize() > size );
+        }
+        try (SNSStaleStore store = new SNSStaleStore( file )) {
+            assertEquals( 1, store.size() );
+            assertEquals( 2, store.get( "key", SNSStaleStore.TERMS ).size() );
+        }
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        File file = new File( tempDir, "stale.dat" );
+        long size;
+        try (SNSStaleStore store = new SNSStaleStore( file )) {
+            store.put( "first", SNSStaleStore.TERMS, List.of( createTerm( "Wasser" ) ) );
+            size = store.getFileSize();
+            store.put( "second", SNSStaleStore.TERMS, List.of( createTerm( "Boden" ) ) );
+        }
+        // cut the last record as after a crash while writing
+        try (RandomAccessFile raf = new RandomAccessFile( file, "rw" )) {
+            raf.setLength( raf.length() - 3 );
+        }
+
+        try (SNSStaleStore store = new SNSStaleStore( file )) {
+            assertEquals( 1, store.size() );
+            assertEquals( size, store.getFileSize() );
+            assertEquals( "Wasser", store.get( "first", SNSStaleStore.TERMS ).get( 0 ).getName() );
+            assertNull( store.get( "second", SNSStaleStore.TERMS ) );
+
+            // appending continues after the cut off record
+            store.put( "second", SNSStaleStore.TERMS, List.of( createTerm( "Boden" ) ) );
+        }
+        try (SNSStaleStore store = new SNSStaleStore( file )) {
+            assertEquals( "Boden", store.get( "second", SNSStaleStore.TERMS ).get( 0 ).getName() );
+        }
+    }
+
+    @Test
+    public void testCorruptedRecord() throws Exception {
+        File file = new File( tempDir, "stale.dat" );
+        long size;
+        try (SNSStaleStore store = new SNSStaleStore( file )) {
+            store.put( "first", SNSStaleStore.TERMS, List.of( createTerm( "Wasser" ) ) );
+            size = store.getFileSize();
+            store.put( "second", SNSStaleStore.TERMS, List.of( createTerm( "Boden" ) ) );
+        }
+        try (RandomAccessFile raf = new RandomAccessFile( file, "rw" )) {
+            raf.seek( raf.length() - 2 );
+            raf.write( 'X' );
+        }
+
+        try (SNSStaleStore store = new SNSStaleStore( file )) {
+            assertEquals( 1, store.size() );
+            assertEquals( size, store.getFileSize() );
+        }
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        File file = new File( tempDir, "stale.dat" );
+        try (SNSStaleStore store = new SNSStaleStore( file )) {
+            for (int i = 0; i < 100; i++) {
+                store.put( "key" + (i % 10), SNSStaleStore.TERMS, List.of( createTerm( "Begriff " + i ) ) );
+            }
+            long size = store.getFileSize();
+            store.compact();
+            assertTrue( store.getFileSize() < size / 5 );
+            assertEquals( "Begriff 93", store.get( "key3", SNSStaleStore.TERMS ).get( 0 ).getName() );
+
+            store.put( "key3", SNSStaleStore.TERMS, List.of( createTerm( "Begriff 100" ) ) );
+        }
+        assertFalse( new File( tempDir, "stale.dat.compact" ).exists() );
+
+        try (SNSStaleStore store = new SNSStaleStore( file )) {
+            assertEquals( 10, store.size() );
+            assertEquals( "Begriff 100", store.get( "key3", SNSStaleStore.TERMS ).get( 0 ).getName() );
+            assertEquals( "Begriff 99", store.get( "key9", SNSStaleStore.TERMS ).get( 0 ).getName() );
+        }
+    }
+
+    @Test
+    public void testServedWhileServiceIsDown() throws Exception {
+        File file = new File( tempDir, "stale.dat" );
+        SNSStubServer server = new SNSStubServer();
+        try {
+            server.respond( "/umthes/de/concepts/", "/stub/concept.rdf" );
+            String termId = server.getUrl( "umthes" ) + "_00001";
+            String[] settings = { "sns.staleStore.file=" + file.getAbsolutePath(), "sns.retries=0",
+                    "sns.circuitBreaker.failureThreshold=1", "sns.cache.maxEntries=0" };
+
+            SNSService snsService = new SNSService();
+            snsService.init( server.createSettings( settings ) );
+            assertEquals( "Begriff _00001", snsService.getTerm( termId, Locale.GERMAN ).getName() );
+
+            // a restarted service is able to answer from the stored results
+            server.fail( "/umthes/", 503 );
+            SNSService restarted = new SNSService();
+            restarted.init( server.createSettings( settings ) );
+            assertEquals( "Begriff _00001", restarted.getTerm( termId, Locale.GERMAN ).getName() );
+            int requests = server.getRequestCount();
+            assertEquals( "Begriff _00001", restarted.getTerm( termId, Locale.GERMAN ).getName() );
+            assertEquals( requests, server.getRequestCount() );
+
+            RuntimeException e = assertThrows( RuntimeException.class,
+                    () -> restarted.getTerm( server.getUrl( "umthes" ) + "_00002", Locale.GERMAN ) );
+            assertEquals( "SNS_TIMEOUT", e.getMessage() );
+        } finally {
+            server.close();
+        }
+    }
+
+    private static Term createTerm(String name) {
+        return new TermImpl( "http://test.sns/umthes/" + name.hashCode(), name, TermType.DESCRIPTOR );
+    }
+}
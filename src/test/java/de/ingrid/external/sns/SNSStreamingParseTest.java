@@ -0,0 +1,237 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import de.ingrid.external.om.Location;
+import de.ingrid.external.om.RelatedTerm;
+import de.ingrid.external.om.Term;
+import de.ingrid.external.om.impl.LocationImpl;
+import de.ingrid.external.om.impl.TermImpl;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the streamed parsing of SNS responses into {@link SNSConcept}s with parsing them into a
+ * Jena model: same mapping results, less allocation and faster.
+ */
+public class SNSStreamingParseTest {
+
+    private final static Logger log = LogManager.getLogger(SNSStreamingParseTest.class);
+
+    private static final String TERM_ID = "https://sns.uba.de/umthes/_00049251";
+    private static final String LOCATION_ID = "https://sns.uba.de/gazetteer/_06412000";
+
+    private static SNSMapper snsMapper;
+    private static byte[] termResponse;
+    private static byte[] locationResponse;
+
+    @BeforeAll
+    public static void setUp() throws IOException {
+        snsMapper = SNSMapper.getInstance(ResourceBundle.getBundle("sns"));
+        termResponse = read("/stub/recorded-term.rdf");
+        locationResponse = read("/stub/recorded-location.rdf");
+    }
+
+    @Test
+    public void testTermLikeModel() {
+        Resource res = parseModel(termResponse, TERM_ID);
+        SNSConcept concept = parseConcepts(termResponse, TERM_ID).get(TERM_ID);
+
+        for (String lang : new String[] { "de", "en" }) {
+            Term expected = snsMapper.mapToTerm(res, new TermImpl(), lang);
+            Term term = snsMapper.mapToTerm(concept, new TermImpl(), lang);
+            assertEquals(expected.getId(), term.getId());
+            assertEquals(expected.getName(), term.getName());
+            assertEquals(expected.getType(), term.getType());
+            assertEquals(expected.getAlternateId(), term.getAlternateId());
+            assertEquals(expected.getAlternateName(), term.getAlternateName());
+        }
+        assertEquals("Wasser", concept.getName("de"));
+        assertEquals("GEMETID9242", snsMapper.mapToTerm(concept, new TermImpl(), "de").getAlternateId());
+    }
+
+    @Test
+    public void testRelatedTermsLikeModel() throws Exception {
+        Resource res = parseModel(termResponse, TERM_ID);
+        List<String> expected = toStrings(snsMapper.mapToRelatedTerms(TERM_ID, res, "de"));
+
+        try (SNSStubServer server = new SNSStubServer()) {
+            server.respond("/umthes/de/concepts/", "/stub/recorded-term.rdf");
+            SNSService snsService = new SNSService();
+            snsService.init(server.createSettings());
+
+            RelatedTerm[] related = snsService.getRelatedTermsFromTerm(TERM_ID, Locale.GERMAN);
+            assertEquals(4 + 2 + 20 + 10, related.length);
+            // the model delivers the relations of one kind in any order
+            assertEquals(expected, toStrings(Arrays.asList(related)));
+        }
+    }
+
+    @Test
+    public void testLocationsLikeModel() throws Exception {
+        Resource res = parseModel(locationResponse, LOCATION_ID);
+        Map<String, SNSConcept> concepts = parseConcepts(locationResponse, LOCATION_ID);
+
+        List<Resource> resources = new ArrayList<>();
+        resources.add(res);
+        StmtIterator it = RDFUtils.getRelatedConcepts(res);
+        while (it.hasNext()) {
+            resources.add(it.next().getResource());
+        }
+        assertEquals(9, resources.size());
+        for (Resource locationRes : resources) {
+            Location expected = snsMapper.mapToLocation(locationRes, new LocationImpl(), "de");
+            Location location = snsMapper.mapToLocation(concepts.get(locationRes.getURI()), new LocationImpl(), "de");
+            assertEquals(expected.getId(), location.getId());
+            assertEquals(expected.getName(), location.getName());
+            assertEquals(expected.getTypeId(), location.getTypeId());
+            assertEquals(expected.getTypeName(), location.getTypeName());
+            assertEquals(expected.getQualifier(), location.getQualifier());
+            assertEquals(expected.getNativeKey(), location.getNativeKey());
+            assertArrayEquals(expected.getBoundingBox(), location.getBoundingBox());
+            assertEquals(expected.getIsExpired(), location.getIsExpired());
+            assertEquals(expected.getExpiredDate(), location.getExpiredDate());
+            assertArrayEquals(expected.getSuccessorIds(), location.getSuccessorIds());
+        }
+
+        try (SNSStubServer server = new SNSStubServer()) {
+            server.respond("/gazetteer/de/concepts/", "/stub/recorded-location.rdf");
+            SNSService snsService = new SNSService();
+            snsService.init(server.createSettings());
+
+            // expired location removed
+            Location[] locations = snsService.getRelatedLocationsFromLocation(LOCATION_ID, true, Locale.GERMAN);
+            assertEquals(8, locations.length);
+            assertEquals("Frankfurt am Main", locations[0].getName());
+            assertEquals("06412000", locations[0].getNativeKey());
+            assertEquals(8.4727605f, locations[0].getBoundingBox()[0]);
+        }
+    }
+
+    @Test
+    public void testParseBenchmark() {
+        int iterations = 2000;
+        Consumer<byte[]> modelPath = response -> {
+            Resource res = parseModel(response, TERM_ID);
+            snsMapper.mapToTerm(res, new TermImpl(), "de");
+            snsMapper.mapToRelatedTerms(TERM_ID, res, "de");
+        };
+        Consumer<byte[]> streamingPath = response -> {
+            Map<String, SNSConcept> concepts = parseConcepts(response, TERM_ID);
+            SNSConcept concept = concepts.get(TERM_ID);
+            snsMapper.mapToTerm(concept, new TermImpl(), "de");
+            snsMapper.mapToRelatedTerms(concept, resolve(concepts, concept.getBroader()),
+                    resolve(concepts, concept.getNarrower()), resolve(concepts, concept.getRelated()), "de");
+        };
+
+        // the RDF/XML parser alone, its setup is the same for both paths
+        Consumer<byte[]> parserOnly = response -> RDFParser.create().source(new ByteArrayInputStream(response))
+                .lang(Lang.RDFXML).base(TERM_ID).parse(StreamRDFLib.sinkNull());
+
+        // warm up all paths before measuring
+        measure(modelPath, iterations);
+        measure(streamingPath, iterations);
+        measure(parserOnly, iterations);
+        long[] model = measure(modelPath, iterations);
+        long[] streaming = measure(streamingPath, iterations);
+        long[] parser = measure(parserOnly, iterations);
+
+        log.info("Model + RDFUtils: {} bytes/call, {} calls/s", model[0] / iterations, iterations * 1000000000L / model[1]);
+        log.info("Streaming:        {} bytes/call, {} calls/s", streaming[0] / iterations, iterations * 1000000000L / streaming[1]);
+        log.info("Parser only:      {} bytes/call, {} calls/s", parser[0] / iterations, iterations * 1000000000L / parser[1]);
+        log.info("Allocation beyond the parser: model {} bytes/call, streaming {} bytes/call",
+                (model[0] - parser[0]) / iterations, (streaming[0] - parser[0]) / iterations);
+        assertTrue(streaming[0] < model[0], "streaming allocates more than the model: " + streaming[0] + " > " + model[0]);
+    }
+
+    /** @return allocated bytes of the current thread and elapsed nanos */
+    private static long[] measure(Consumer<byte[]> path, int iterations) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            path.accept(termResponse);
+        }
+        return new long[] { threads.getThreadAllocatedBytes(threadId) - allocated, System.nanoTime() - start };
+    }
+
+    private static Resource parseModel(byte[] response, String id) {
+        Model model = ModelFactory.createDefaultModel();
+        model.read(new ByteArrayInputStream(response), id);
+        return model.getResource(id);
+    }
+
+    private static Map<String, SNSConcept> parseConcepts(byte[] response, String base) {
+        SNSConceptCollector collector = new SNSConceptCollector();
+        RDFParser.create().source(new ByteArrayInputStream(response)).lang(Lang.RDFXML).base(base).parse(collector);
+        return collector.getConcepts();
+    }
+
+    private static List<SNSConcept> resolve(Map<String, SNSConcept> concepts, List<String> ids) {
+        List<SNSConcept> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            result.add(concepts.get(id));
+        }
+        return result;
+    }
+
+    private static List<String> toStrings(List<RelatedTerm> terms) {
+        List<String> result = new ArrayList<>();
+        for (RelatedTerm term : terms) {
+            result.add(term.getRelationType() + " " + term.getType() + " " + term.getId() + " " + term.getName());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static byte[] read(String resource) throws IOException {
+        try (InputStream in = SNSStreamingParseTest.class.getResourceAsStream(resource)) {
+            return in.readAllBytes();
+        }
+    }
+}
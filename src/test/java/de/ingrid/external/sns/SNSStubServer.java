@@ -0,0 +1,278 @@
+/*
+ * **************************************************-
+ * ingrid-external-service-sns
+ * ==================================================
+ * Copyright (C) 2014 - 2024 wemove digital solutions GmbH
+ * ==================================================
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ * 
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * https://joinup.ec.europa.eu/software/page/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * **************************************************#
+ */
+package de.ingrid.external.sns;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the SNS webservice used by tests which must not depend on sns.uba.de.
+ * <p>
+ * Responses are registered as templates for a path prefix (e.g. "/umthes/de/concepts/"). The
+ * template of the longest matching prefix is returned, where "${base}" is replaced by the url of
+ * the requested service (e.g. "http://127.0.0.1:1234/umthes/") and "${id}" by the last path
+ * segment of the request without its file extension. Parameters of the query are replaced by
+ * their name, e.g. "${page}" by the value of "page=2".
+ */
+public class SNSStubServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final Map<String, String> templates = new ConcurrentHashMap<>();
+    // status and number of remaining failures (negative for all requests) by path prefix
+    private final Map<String, int[]> failures = new ConcurrentHashMap<>();
+    // redirect target by path prefix
+    private final Map<String, String> redirects = new ConcurrentHashMap<>();
+    // path prefixes whose responses stop after the headers and the first half of the body
+    private final Set<String> stalls = ConcurrentHashMap.newKeySet();
+
+    // requests wait until the gate is opened
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    private volatile long delay = 0;
+    private volatile long[] delays = new long[0];
+    private final AtomicInteger delayed = new AtomicInteger();
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    public SNSStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /** @return the url of the given service, e.g. getUrl("umthes") */
+    public String getUrl(String service) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/" + service + "/";
+    }
+
+    /**
+     * Create the settings for an SNSService using this server for thesaurus ("umthes"), gazetteer
+     * ("gazetteer") and chronicle ("chronik").
+     *
+     * @param additionalSettings further lines in properties format, e.g. "sns.cache.maxEntries=0"
+     */
+    public ResourceBundle createSettings(String... additionalSettings) throws IOException {
+        StringBuilder settings = new StringBuilder();
+        settings.append("sns.username=\nsns.password=\nsns.language=de\n");
+        settings.append("sns.serviceURL.thesaurus=").append(getUrl("umthes")).append("\n");
+        settings.append("sns.serviceURL.gazetteer=").append(getUrl("gazetteer")).append("\n");
+        settings.append("sns.serviceURL.chronicle=").append(getUrl("chronik")).append("\n");
+        settings.append("sns.timeout=5000\nsns.nativeKeyPrefix=agsNotation\n");
+        for (String setting : additionalSettings) {
+            settings.append(setting).append("\n");
+        }
+        return new PropertyResourceBundle(new StringReader(settings.toString()));
+    }
+
+    /** Respond to all requests starting with the path prefix with the given classpath resource. */
+    public void respond(String pathPrefix, String resource) throws IOException {
+        try (InputStream in = SNSStubServer.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Missing test resource: " + resource);
+            }
+            templates.put(pathPrefix, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Respond to all requests starting with the path prefix with the given status and no body. */
+    public void fail(String pathPrefix, int status) {
+        fail(pathPrefix, status, -1);
+    }
+
+    /** Respond to the next requests starting with the path prefix with the given status and no body. */
+    public void fail(String pathPrefix, int status, int times) {
+        failures.put(pathPrefix, new int[] { status, times });
+    }
+
+    /** Redirect all requests starting with the path prefix to the given url. */
+    public void redirect(String pathPrefix, String location) {
+        redirects.put(pathPrefix, location);
+    }
+
+    /**
+     * Send the headers and the first half of the body of all requests starting with the path prefix,
+     * the rest of the body is never sent.
+     */
+    public void stall(String pathPrefix) {
+        stalls.add(pathPrefix);
+    }
+
+    /** Respond normally again to all requests. */
+    public void recover() {
+        failures.clear();
+        redirects.clear();
+        stalls.clear();
+    }
+
+    /** Hold all following requests until {@link #release()} is called. */
+    public void block() {
+        gate = new CountDownLatch(1);
+    }
+
+    /** Continue the held requests. */
+    public void release() {
+        gate.countDown();
+    }
+
+    /** Delay every response by the given milliseconds to simulate network latency. */
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * Delay the next responses by the given milliseconds, one value per request in the order of
+     * arrival. Later responses are delayed by {@link #setDelay(long)}.
+     */
+    public void setDelays(long... delays) {
+        this.delayed.set(0);
+        this.delays = delays;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /** @return the number of requests being handled */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /** @return the maximum number of requests which were handled at the same time */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        int request = delayed.getAndIncrement();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            exchange.getRequestBody().readAllBytes();
+            long[] delays = this.delays;
+            long requestDelay = request < delays.length ? delays[request] : delay;
+            if (requestDelay > 0) {
+                Thread.sleep(requestDelay);
+            }
+            gate.await();
+
+            String path = exchange.getRequestURI().getPath();
+            for (Map.Entry<String, int[]> entry : failures.entrySet()) {
+                if (path.startsWith(entry.getKey())) {
+                    int[] failure = entry.getValue();
+                    synchronized (failure) {
+                        if (failure[1] == 0) {
+                            continue;
+                        }
+                        failure[1]--;
+                    }
+                    exchange.sendResponseHeaders(failure[0], -1);
+                    return;
+                }
+            }
+            for (Map.Entry<String, String> entry : redirects.entrySet()) {
+                if (path.startsWith(entry.getKey())) {
+                    exchange.getResponseHeaders().set("Location", entry.getValue());
+                    exchange.sendResponseHeaders(302, -1);
+                    return;
+                }
+            }
+            String template = null;
+            String match = "";
+            for (Map.Entry<String, String> entry : templates.entrySet()) {
+                if (path.startsWith(entry.getKey()) && entry.getKey().length() > match.length()) {
+                    match = entry.getKey();
+                    template = entry.getValue();
+                }
+            }
+            if (template == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            String service = path.substring(1, path.indexOf('/', 1));
+            String id = path.substring(path.lastIndexOf('/') + 1);
+            if (id.contains(".")) {
+                id = id.substring(0, id.indexOf('.'));
+            }
+            String response = template.replace("${base}", getUrl(service)).replace("${id}", id);
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String param : query.split("&")) {
+                    int i = param.indexOf('=');
+                    if (i > 0) {
+                        response = response.replace("${" + param.substring(0, i) + "}",
+                                URLDecoder.decode(param.substring(i + 1), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/rdf+xml; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                if (stalls.stream().anyMatch(path::startsWith)) {
+                    out.write(body, 0, body.length / 2);
+                    out.flush();
+                    closed.await();
+                    return;
+                }
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}